@@ -0,0 +1,185 @@
+package board;
+
+/**
+ * Precomputed attack tables for every piece type. Squares use the same 0-63
+ * index as Coordinates.getIndex() (a1 = 0, h8 = 63), and every table returns a
+ * bitboard of the squares attacked, regardless of what stands on them.
+ *
+ * Sliding pieces use "magic" bitboards: the blockers on a piece's lines are
+ * multiplied by a magic number so that the top bits form a perfect index into
+ * a table of precomputed attack sets.
+ */
+public class Attacks {
+
+    public static final long[] knightAttacks = new long[64];
+    public static final long[] kingAttacks = new long[64];
+    public static final long[][] pawnAttacks = new long[2][64]; // [colour ordinal][square]
+
+    // Squares strictly between two squares on a shared rank, file or diagonal (0 if not aligned)
+    public static final long[][] between = new long[64][64];
+    // The whole rank, file or diagonal through two squares, edge to edge (0 if not aligned)
+    public static final long[][] line = new long[64][64];
+
+    // Relevant blocker squares (lines minus the board edge) for each square
+    private static final long[] rookMasks = new long[64];
+    private static final long[] bishopMasks = new long[64];
+    private static final int[] rookShifts = new int[64];
+    private static final int[] bishopShifts = new int[64];
+    private static final long[][] rookTable = new long[64][];
+    private static final long[][] bishopTable = new long[64][];
+
+    // Found offline with a seeded random search, one per square
+    private static final long[] rookMagics = {
+            0x1680082040008010L, 0x0480200040008211L, 0x42002010800A0040L, 0x2080100280040800L,
+            0x0200080200042011L, 0x0200010200080410L, 0x8200020000B80114L, 0x01000020C2128900L,
+            0xA110800080204000L, 0x2010400050002008L, 0x0002001200402082L, 0x2100800800801000L,
+            0x4441802800800400L, 0x0810800200800400L, 0x8A05000402000100L, 0x000080178002E100L,
+            0x2040008020800040L, 0x0810004020004010L, 0x0001848020021000L, 0x0401090021001000L,
+            0x0010808008000402L, 0x8010808004000200L, 0x2100040002485001L, 0x200C220011008044L,
+            0x1040002080008048L, 0x00C0004080802000L, 0x4901004100200018L, 0x0050040040400800L,
+            0x0004000480080080L, 0x8001000900040002L, 0x0000105400110802L, 0xF580210200009044L,
+            0x0100400020800080L, 0x4800200080804002L, 0x9A0A002042001084L, 0x0020080080801000L,
+            0x0108000401800880L, 0x1002008022800400L, 0x0090810804000210L, 0x0200140082000051L,
+            0x8880800040008025L, 0x4010004020084000L, 0x4390002804002002L, 0x0081001000A30008L,
+            0x0000080011010004L, 0x8806000400808100L, 0x0001100A88040029L, 0x8888041884420021L,
+            0x0000400020801280L, 0x0006004025008200L, 0x0210001020008080L, 0x6441001000210900L,
+            0x0800040008008280L, 0x0081000208040100L, 0x20004108105A0C00L, 0x008201004400A200L,
+            0x00C100201A028042L, 0x0040410020120082L, 0x9290120208804022L, 0x888101A010007C09L,
+            0x4022000410082002L, 0x1042000841049002L, 0x0080014800821004L, 0x0088040040810022L
+    };
+
+    private static final long[] bishopMagics = {
+            0x5410010208124300L, 0x0020441080810000L, 0x81C1040500430002L, 0x1084040088150002L,
+            0x0002121000400050L, 0x040A412021102C08L, 0x2004088228A0000CL, 0x588100480C843064L,
+            0x0008441828412400L, 0x0000024801010201L, 0x4810120410460020L, 0x0400040420800050L,
+            0x0502308820400000L, 0x0410084410040808L, 0x102010A828080400L, 0x2008010592052021L,
+            0x085114A042104320L, 0x2004102004041044L, 0x1010024101020010L, 0x4000800802084000L,
+            0x0101002820082000L, 0x000340120310A000L, 0x0404008203140B00L, 0x0050200049041000L,
+            0x8890041040880200L, 0x0001208004240400L, 0x0002120891080200L, 0x0004080000202040L,
+            0x0041001201004000L, 0xC008020042248400L, 0x82080082410488C0L, 0x0014004002220A00L,
+            0x094A104004242801L, 0x2001045000021060L, 0x5000404040081204L, 0x0008020082080080L,
+            0x101544040008C100L, 0x4010900084810080L, 0x20040810500A0D04L, 0x2011084100408400L,
+            0x14D0901008001045L, 0x000884018800A000L, 0x0011008050102500L, 0x0010002214000800L,
+            0x008308220820A400L, 0x4028101002105421L, 0x0010301E00904040L, 0x0084080210208042L,
+            0x900100B03008C091L, 0x0821028219200000L, 0x0042002402080202L, 0x0200880084044003L,
+            0x91061011320A008CL, 0x1208081070A08002L, 0x01210E260A04200CL, 0x0005344084010040L,
+            0x8101004042084004L, 0x0010014404092804L, 0x0008541214840414L, 0xA218040020420200L,
+            0x02804C8411021204L, 0x2008000408100444L, 0x0004110288080088L, 0x0002028226020200L
+    };
+
+    private static final int[][] rookDirections = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+    private static final int[][] bishopDirections = { { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+
+    static {
+        int[][] knightDeltas = { { 2, 1 }, { 2, -1 }, { -2, 1 }, { -2, -1 }, { 1, 2 }, { 1, -2 }, { -1, 2 }, { -1, -2 } };
+        int[][] kingDeltas = { { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, 1 }, { 0, -1 }, { -1, 1 }, { -1, 0 }, { -1, -1 } };
+
+        for (int sq = 0; sq < 64; sq++) {
+            knightAttacks[sq] = leaperAttacks(sq, knightDeltas);
+            kingAttacks[sq] = leaperAttacks(sq, kingDeltas);
+            // White pawns attack up the board (increasing rank), black pawns down
+            pawnAttacks[0][sq] = leaperAttacks(sq, new int[][] { { 1, 1 }, { 1, -1 } });
+            pawnAttacks[1][sq] = leaperAttacks(sq, new int[][] { { -1, 1 }, { -1, -1 } });
+
+            rookMasks[sq] = blockerMask(sq, rookDirections);
+            bishopMasks[sq] = blockerMask(sq, bishopDirections);
+            rookShifts[sq] = 64 - Long.bitCount(rookMasks[sq]);
+            bishopShifts[sq] = 64 - Long.bitCount(bishopMasks[sq]);
+            rookTable[sq] = buildTable(sq, rookMasks[sq], rookMagics[sq], rookShifts[sq], rookDirections);
+            bishopTable[sq] = buildTable(sq, bishopMasks[sq], bishopMagics[sq], bishopShifts[sq], bishopDirections);
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                long aBit = 1L << a;
+                long bBit = 1L << b;
+                if (a == b) {
+                    continue;
+                }
+                if ((rookAttacks(a, 0) & bBit) != 0) {
+                    between[a][b] = rookAttacks(a, bBit) & rookAttacks(b, aBit);
+                    line[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | aBit | bBit;
+                } else if ((bishopAttacks(a, 0) & bBit) != 0) {
+                    between[a][b] = bishopAttacks(a, bBit) & bishopAttacks(b, aBit);
+                    line[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | aBit | bBit;
+                }
+            }
+        }
+    }
+
+    // Slider attack sets. Each ray stops at (and includes) the first occupied
+    // square, and sq itself is never included, so callers need no path or
+    // same-square checks of their own.
+
+    public static long rookAttacks(int sq, long occupancy) {
+        return rookTable[sq][(int) (((occupancy & rookMasks[sq]) * rookMagics[sq]) >>> rookShifts[sq])];
+    }
+
+    public static long bishopAttacks(int sq, long occupancy) {
+        return bishopTable[sq][(int) (((occupancy & bishopMasks[sq]) * bishopMagics[sq]) >>> bishopShifts[sq])];
+    }
+
+    public static long queenAttacks(int sq, long occupancy) {
+        return rookAttacks(sq, occupancy) | bishopAttacks(sq, occupancy);
+    }
+
+    private static long leaperAttacks(int sq, int[][] deltas) {
+        long attacks = 0;
+        int rank = sq / 8;
+        int file = sq % 8;
+        for (int[] d : deltas) {
+            int r = rank + d[0];
+            int f = file + d[1];
+            if (r >= 0 && r < 8 && f >= 0 && f < 8) {
+                attacks |= 1L << (r * 8 + f);
+            }
+        }
+        return attacks;
+    }
+
+    // Squares whose occupancy can change a slider's attacks. The last square of
+    // each ray is left out because it is attacked whether or not it is occupied.
+    private static long blockerMask(int sq, int[][] directions) {
+        long mask = 0;
+        for (int[] d : directions) {
+            int r = sq / 8 + d[0];
+            int f = sq % 8 + d[1];
+            while (r + d[0] >= 0 && r + d[0] < 8 && f + d[1] >= 0 && f + d[1] < 8) {
+                mask |= 1L << (r * 8 + f);
+                r += d[0];
+                f += d[1];
+            }
+        }
+        return mask;
+    }
+
+    // Slow ray walk, only used to fill the tables at startup
+    private static long slidingAttacks(int sq, long occupancy, int[][] directions) {
+        long attacks = 0;
+        for (int[] d : directions) {
+            int r = sq / 8 + d[0];
+            int f = sq % 8 + d[1];
+            while (r >= 0 && r < 8 && f >= 0 && f < 8) {
+                long bit = 1L << (r * 8 + f);
+                attacks |= bit;
+                if ((occupancy & bit) != 0) {
+                    break; // Blocked: the blocker itself is still attacked
+                }
+                r += d[0];
+                f += d[1];
+            }
+        }
+        return attacks;
+    }
+
+    private static long[] buildTable(int sq, long mask, long magic, int shift, int[][] directions) {
+        long[] table = new long[1 << (64 - shift)];
+        // Carry-rippler trick: walks every subset of the mask
+        long subset = 0;
+        do {
+            table[(int) ((subset * magic) >>> shift)] = slidingAttacks(sq, subset, directions);
+            subset = (subset - mask) & mask;
+        } while (subset != 0);
+        return table;
+    }
+}
@@ -0,0 +1,191 @@
+package board;
+
+import enums.pieceColour;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Searches a fixed set of positions to a fixed depth and reports nodes and
+ * time to depth, so search changes can be compared like for like. The time
+ * limit is lifted, so every position always completes the full depth.
+ *
+ * Usage:
+ * java board.Bench [depth] [threads n | smp n] [nonull] [nolmr] [nofutility] [norfp]
+ *                   [norazor] [nosee] [nodelta] [qtt]
+ *
+ * java board.Bench ordering
+ *
+ * threads n searches with n threads. smp n runs the suite with 1 to n
+ * threads and finishes with a table of time to depth and nodes per second
+ * for each, against the single-threaded run. ordering checks static exchange
+ * values and which captures quiescence search is handed, instead of searching.
+ *
+ * The no... options turn off null-move pruning, late move reductions,
+ * futility pruning, reverse futility pruning, razoring, static exchange
+ * pruning and delta pruning respectively. qtt turns on the transposition
+ * table in quiescence search, which is off by default.
+ */
+public class Bench {
+
+    // Openings, middlegames with tactics, and endgames
+    private static final String[] positions = {
+            Fen.startPosition,
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "2r3k1/pp3ppp/2n1b3/3p4/3P4/2N1B3/PP3PPP/2R3K1 b - - 0 20",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+    };
+
+    // Plenty for the bench depths, and quick to allocate for every position
+    private static final int tableMegabytes = 32;
+
+    // Position, capture, its static exchange value, and whether quiescence
+    // search should be given it (losing captures are held back)
+    private static final Object[][] orderingSuite = {
+            // Undefended rook after the knight is recaptured: winning, despite the queen's losing captures
+            { "7k/1p6/p1r5/4N3/8/8/8/Q6K w - - 0 1", "e5c6", 200, true },
+            { "7k/1p6/p1r5/4N3/8/8/8/Q6K w - - 0 1", "a1a6", -800, false },
+            { "4k3/8/2p5/3p4/8/8/3Q4/4K3 w - - 0 1", "d2d5", -800, false },
+            { "4k3/8/2p5/3p4/8/8/3R4/3RK3 w - - 0 1", "d2d5", -300, false },
+            { "8/8/8/4k3/3p4/8/5B2/3RK3 w - - 0 1", "d1d4", 100, true },
+            { "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6", 100, true },
+    };
+
+    /**
+     * Checks the static exchange value of each capture in the ordering suite,
+     * and that the quiescence move picker hands out exactly the ones that
+     * don't lose material.
+     *
+     * @return True if every position matched
+     */
+    public static boolean runOrderingSuite() {
+        boolean passed = true;
+        MovePicker picker = new MovePicker();
+        for (Object[] test : orderingSuite) {
+            String fen = (String) test[0];
+            String uci = (String) test[1];
+            int expectedSee = (Integer) test[2];
+            boolean expectedPicked = (Boolean) test[3];
+
+            Board board = Perft.load(fen);
+            pieceColour side = board.isWhiteToMove() ? pieceColour.WHITE : pieceColour.BLACK;
+            int move = MoveCode.none;
+            int[] moves = new int[256];
+            int count = board.generateLegalMoves(side, moves, 0);
+            for (int i = 0; i < count; i++) {
+                if (MoveCode.toString(moves[i]).equals(uci)) {
+                    move = moves[i];
+                }
+            }
+            boolean picked = false;
+            picker.resetNoisy(board, side);
+            for (int m = picker.next(); m != MoveCode.none; m = picker.next()) {
+                picked |= m == move;
+            }
+
+            int see = (move == MoveCode.none) ? 0 : board.see(move);
+            boolean ok = move != MoveCode.none && see == expectedSee && picked == expectedPicked;
+            passed &= ok;
+            System.out.println((ok ? "OK   " : "FAIL ") + uci + " see " + see + (picked ? " picked" : " held back")
+                    + (ok ? "" : " (expected " + expectedSee + (expectedPicked ? " picked)" : " held back)"))
+                    + "  " + fen);
+        }
+        System.out.println(passed ? "Ordering passed." : "Ordering FAILED.");
+        return passed;
+    }
+
+    /**
+     * Runs every position with a fresh Search and prints one line each, then
+     * the totals.
+     *
+     * @param depth
+     * @param threads
+     * @param options Selective search switches to turn off, as on the command line
+     * @return Total nodes searched
+     */
+    public static long run(int depth, int threads, List<String> options) {
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (String fen : positions) {
+            Board board = new Board();
+            board.initialise(fen);
+            Search search = new Search(tableMegabytes);
+            search.setTimeLimit(Long.MAX_VALUE);
+            search.setThreads(threads);
+            search.useNullMove = !options.contains("nonull");
+            search.useLateMoveReductions = !options.contains("nolmr");
+            search.useFutilityPruning = !options.contains("nofutility");
+            search.useReverseFutility = !options.contains("norfp");
+            search.useRazoring = !options.contains("norazor");
+            search.useSeePruning = !options.contains("nosee");
+            search.useDeltaPruning = !options.contains("nodelta");
+            search.useQuiescenceTT = options.contains("qtt");
+
+            long positionStart = System.nanoTime();
+            Move best = search.findBestMove(board, depth, board.isWhiteToMove(), false);
+            long elapsedMs = (System.nanoTime() - positionStart) / 1000000;
+            totalNodes += search.getNodes();
+            System.out.printf("%-12s %10d nodes %7d ms  %s%n", best, search.getNodes(), elapsedMs, fen);
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println("Depth: " + depth + ((threads > 1) ? ", " + threads + " threads" : ""));
+        System.out.println("Nodes: " + totalNodes);
+        System.out.println("Time:  " + elapsedMs + " ms");
+        System.out.println("NPS:   " + (totalNodes * 1000 / elapsedMs));
+        return totalNodes;
+    }
+
+    /**
+     * Runs the suite with 1 to maxThreads threads, then prints time to depth
+     * and nodes per second for each thread count, with the speedup over one
+     * thread.
+     *
+     * @param depth
+     * @param maxThreads
+     * @param options As for run
+     */
+    public static void scaling(int depth, int maxThreads, List<String> options) {
+        long[] nodes = new long[maxThreads + 1];
+        long[] times = new long[maxThreads + 1];
+        // So the one-thread run isn't the one paying for JIT compilation
+        System.out.println("Warm-up");
+        run(Math.max(1, depth - 1), maxThreads, options);
+        System.out.println();
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            long start = System.nanoTime();
+            nodes[threads] = run(depth, threads, options);
+            times[threads] = Math.max(1, (System.nanoTime() - start) / 1000000);
+            System.out.println();
+        }
+        System.out.println("Threads      Nodes    Time ms        NPS  Speedup  NPS scaling");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            long nps = nodes[threads] * 1000 / times[threads];
+            long nps1 = nodes[1] * 1000 / times[1];
+            System.out.printf("%7d %10d %10d %10d %7.2fx %11.2fx%n", threads, nodes[threads], times[threads], nps,
+                    (double) times[1] / times[threads], (double) nps / nps1);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("ordering")) {
+            if (!runOrderingSuite()) {
+                System.exit(1);
+            }
+            return;
+        }
+        List<String> options = Arrays.asList(args);
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        int smp = options.indexOf("smp");
+        int threads = options.indexOf("threads");
+        if (smp >= 0) {
+            scaling(depth, Integer.parseInt(args[smp + 1]), options);
+        } else {
+            run(depth, (threads >= 0) ? Integer.parseInt(args[threads + 1]) : 1, options);
+        }
+    }
+}
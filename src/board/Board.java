@@ -1,5 +1,6 @@
 package board;
 
+import enums.gameState;
 import enums.pieceColour;
 import enums.pieceType;
 import javafx.scene.layout.GridPane;
@@ -20,14 +21,72 @@ public class Board {
 
     public long zobristHash;
     public int whosInCheck = 0; // 0: No checks. 1: White in check. 2: Black in check.
-    public Stack<Move> history = new Stack<>();
-    private Move lastMove;
+    public List<Move> history = new ArrayList<>(); // Moves played through doMove
+    // Undo record for every move made with makeMove/doMove, indexed by ply.
+    // Records are allocated up front and reused; grown on demand so long games
+    // never overflow.
+    private int ply = 0;
+    private Undo[] undoStack = newUndoStack(256);
+    private long[] keys = new long[256]; // Hash before each move, for repetition checks
+    private int copyBase = 0; // Plies inherited by copy(), which cannot be taken back
+    // State a move cannot be worked out backwards from; saved in undoStack
+    private int castlingRights = 0; // Bits as in Position: 1 K, 2 Q, 4 k, 8 q
+    private int enPassantSquare = -1; // Square behind a pawn that just double pushed
+    private int halfmoveClock = 0; // Plies since the last capture or pawn move
+    private boolean whiteToMove = true;
+    private int fullmoveNumber = 1; // Goes up after every black move, as in FEN
+    private final int[] legalityBuffer = new int[256]; // Scratch space for isLegal and hasAnyLegalMove
+    // Last result of the position-only part of getGameState, per side
+    private final long[] stateCacheKeys = new long[2];
+    private final gameState[] stateCache = new gameState[2];
     private Piece[][] grid = new Piece[8][8];
     private ArrayList<Piece> whitePieces = new ArrayList<>();
     private ArrayList<Piece> blackPieces = new ArrayList<>();
+    private final int[] kingSquares = { -1, -1 }; // Indexed by pieceColour ordinal, kept by setPiece
+    // Occupancy bitboards kept in sync with grid. Bit n is the square with
+    // Coordinates.getIndex() == n, so a1 is bit 0 and h8 is bit 63.
+    private final long[] colourBitboards = new long[2]; // Indexed by pieceColour ordinal
+    private final long[] typeBitboards = new long[6]; // Indexed by pieceType ordinal
+    private final int[] seeGains = new int[32]; // Scratch space for see
     private Map<String, Image> imageCache = new HashMap<>();
     GridPane board;
 
+    // Exchange values for see and capture ordering, indexed by pieceType ordinal
+    static final int[] pieceValues = { 100, 300, 300, 500, 900, 20000 };
+
+    // Castling rights that survive a move touching each square: leaving or
+    // capturing on a king or rook home square loses the rights that need it
+    private static final int[] castlingMasks = new int[64];
+
+    static {
+        Arrays.fill(castlingMasks, 15);
+        castlingMasks[4] = 15 & ~(Position.whiteKingside | Position.whiteQueenside); // e1
+        castlingMasks[7] = 15 & ~Position.whiteKingside; // h1
+        castlingMasks[0] = 15 & ~Position.whiteQueenside; // a1
+        castlingMasks[60] = 15 & ~(Position.blackKingside | Position.blackQueenside); // e8
+        castlingMasks[63] = 15 & ~Position.blackKingside; // h8
+        castlingMasks[56] = 15 & ~Position.blackQueenside; // a8
+    }
+
+    // Everything unmakeMove needs to restore a move without recomputing it
+    private static final class Undo {
+        int move;
+        Piece mover; // The pawn, if the move promoted
+        Piece captured;
+        boolean movedBefore;
+        int castlingRights;
+        int enPassantSquare;
+        int halfmoveClock;
+    }
+
+    private static Undo[] newUndoStack(int size) {
+        Undo[] stack = new Undo[size];
+        for (int i = 0; i < size; i++) {
+            stack[i] = new Undo();
+        }
+        return stack;
+    }
+
     public Board() {
         initialise("8/7P/8/3K4/8/1k6/p7/8 w - - 0 1");
         //initialise("8/p7/1k6/8/8/6K1/7P/8 w - - 0 1");
@@ -35,224 +94,528 @@ public class Board {
         syncPieceLists();
     }
 
-    public String getGameState(pieceColour colour) {
-        // First, check if there are ANY legal moves
-        for (int startRow = 0; startRow < 8; startRow++) {
-            for (int startCol = 0; startCol < 8; startCol++) {
-                Piece p = grid[startRow][startCol];
-
-                if (p != null && p.getColour() == colour) {
-                    for (int targetRow = 0; targetRow < 8; targetRow++) {
-                        for (int targetCol = 0; targetCol < 8; targetCol++) {
-
-                            // Optimization: Don't check moving onto your own pieces
-                            Piece targetPiece = grid[targetRow][targetCol];
-                            if (targetPiece != null && targetPiece.getColour() == colour) {
-                                continue;
-                            }
-                            if (targetPiece != null && targetPiece.getType() == pieceType.KING) {
-                                continue; // Don't allow capturing the king
-                            }
-
-                            Coordinates to = new Coordinates(8 - targetRow, (char) ('a' + targetCol));
-                            Move testMove = new Move(p, p.getCoordinates(), to);
-
-                            if (isMoveLegal(testMove)) {
-                                return "PLAYING"; // Found a move
-                            }
-                        }
-                    }
-                }
+    /**
+     * Independent deep copy of the position, e.g. for another thread. Pieces
+     * are new objects, so neither board can see moves made on the other.
+     * Moves played before the copy still count for en passant and repetition,
+     * but cannot be taken back on the copy. The move history and display
+     * state are not copied.
+     * 
+     * @return
+     */
+    public Board copy() {
+        Board b = new Board();
+        b.clearBoard();
+        for (pieceColour colour : pieceColour.values()) {
+            for (Piece p : getPieceList(colour)) {
+                Piece q = createPiece(p.getType(), p.getColour(), p.getCoordinates());
+                q.setMoved(p.hasMoved());
+                b.setPiece(q.getCoordinates(), q);
+                b.addPieceToSystem(q);
             }
         }
-
-        // No moves found? Check for check vs stalemate
-        if (isSquareAttacked(findKing(colour), colour)) {
-            return "CHECKMATE";
-        } else {
-            return "STALEMATE";
+        b.undoStack = newUndoStack(undoStack.length);
+        b.keys = Arrays.copyOf(keys, keys.length);
+        for (int i = 0; i < ply; i++) {
+            // Pieces are left out: these plies can never be taken back on the copy
+            Undo from = undoStack[i];
+            Undo to = b.undoStack[i];
+            to.move = from.move;
+            to.castlingRights = from.castlingRights;
+            to.enPassantSquare = from.enPassantSquare;
+            to.halfmoveClock = from.halfmoveClock;
         }
+        b.ply = ply;
+        b.copyBase = ply;
+        b.castlingRights = castlingRights;
+        b.enPassantSquare = enPassantSquare;
+        b.halfmoveClock = halfmoveClock;
+        b.whiteToMove = whiteToMove;
+        b.fullmoveNumber = fullmoveNumber;
+        b.zobristHash = zobristHash;
+        return b;
     }
 
-    public void doMove(Move move) {
-        Piece p = move.piece;
-        int colourIdx = (p.getColour() == pieceColour.WHITE) ? 0 : 1;
-        int enemyIdx = 1 - colourIdx;
-
-        // 1. XOR OUT OLD STATE
-        zobristHash ^= Zobrist.turn;
-        // Remove the OLD castling rights
-        zobristHash ^= Zobrist.castlingRights[getCastlingMask()];
-
-        // Remove OLD EP file (if one existed)
-        if (!history.isEmpty()) {
-            Move prev = history.peek();
-            if (prev.piece.getType() == pieceType.PAWN && Math.abs(prev.from.getRow() - prev.to.getRow()) == 2) {
-                zobristHash ^= Zobrist.passantFiles[prev.to.getCol()];
+    /**
+     * Replaces the whole board with a position snapshot. Castling rights are
+     * also turned back into hasMoved flags for the older move checks.
+     * 
+     * @param position
+     */
+    public void setPosition(Position position) {
+        clearBoard();
+        for (int sq = 0; sq < 64; sq++) {
+            pieceType type = position.getType(sq);
+            if (type == null) {
+                continue;
             }
+            Piece p = createPiece(type, position.getColour(sq), Coordinates.of(sq));
+            p.setMoved(!hasCastlingRight(p, position.getCastling()));
+            setPiece(p.getCoordinates(), p);
+            addPieceToSystem(p);
         }
+        castlingRights = position.getCastling();
+        enPassantSquare = position.getEnPassant();
+        halfmoveClock = position.getHalfmoveClock();
+        fullmoveNumber = position.getFullmoveNumber();
+        initZobrist(position.isWhiteToMove());
+    }
 
-        // 2. MOVE PIECE
-        zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][move.from.getIndex()];
+    /**
+     * @return The full FEN of the current position
+     */
+    public String toFen() {
+        return Fen.format(Position.of(this));
+    }
 
-        if (move.isCastling()) {
-            handleCastling(move, colourIdx, true);
-        } else if (move.isEnPassant()) {
-            Piece victim = move.getCapturedPiece(); // Use the one pre-identified
-            zobristHash ^= Zobrist.pieces[enemyIdx][pieceType.PAWN.ordinal()][victim.getCoordinates().getIndex()];
-            grid[victim.getCoordinates().getRow()][victim.getCoordinates().getCol()] = null;
-            removePieceFromSystem(victim);
-        } else if (grid[move.to.getRow()][move.to.getCol()] != null) {
-            Piece victim = grid[move.to.getRow()][move.to.getCol()];
-            move.setCapturedPiece(victim);
-            zobristHash ^= Zobrist.pieces[enemyIdx][victim.getType().ordinal()][move.to.getIndex()];
-            removePieceFromSystem(victim);
+    // Whether p is a king or rook still entitled to castle under the given rights
+    private static boolean hasCastlingRight(Piece p, int castling) {
+        int sq = p.getCoordinates().getIndex();
+        boolean white = p.getColour() == pieceColour.WHITE;
+        if (p.getType() == pieceType.KING) {
+            return sq == (white ? 4 : 60) && (castling & (white ? 3 : 12)) != 0;
         }
+        if (p.getType() == pieceType.ROOK) {
+            return switch (sq) {
+                case 7 -> white && (castling & Position.whiteKingside) != 0;
+                case 0 -> white && (castling & Position.whiteQueenside) != 0;
+                case 63 -> !white && (castling & Position.blackKingside) != 0;
+                case 56 -> !white && (castling & Position.blackQueenside) != 0;
+                default -> false;
+            };
+        }
+        // Pawns off their start square never get a double push anyway
+        return p.getType() != pieceType.PAWN || sq / 8 == (white ? 1 : 6);
+    }
 
-        grid[move.from.getRow()][move.from.getCol()] = null;
-        move.setPieceWasMovedBefore(p.hasMoved());
-        p.setMoved(true);
+    /**
+     * Square a pawn can currently be captured en passant on (behind the pawn
+     * that just double pushed), or -1.
+     * 
+     * @return
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
 
-        // 3. XOR IN NEW STATE
-        // zobristHash ^=
-        // Zobrist.pieces[colourIdx][p.getType().ordinal()][move.to.getIndex()];
+    /**
+     * Number of moves made on this board (including any inherited by copy()).
+     * 
+     * @return
+     */
+    public int getPly() {
+        return ply;
+    }
 
-        // Handle Promotion Hash
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
 
-        // TODO: Comment back
-        int promotionRow = (move.piece.getColour() == pieceColour.WHITE) ? 0 : 7;
-        if (move.piece.getType() == pieceType.PAWN && move.getMoveTo().getRow() == promotionRow) {
-            removePieceFromSystem(p);
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
 
-            Queen q = new Queen(p.getColour(), move.getMoveTo());
-            move.setPromotedPiece(q);
-            setPiece(move.getMoveTo(), q);
-            addPieceToSystem(q);
-            move.setPromotion(true);
-            int c = (move.piece.getColour() == pieceColour.WHITE) ? 0 : 1;
-            zobristHash ^= Zobrist.pieces[c][pieceType.QUEEN.ordinal()][move.getMoveTo().getIndex()];
+    /**
+     * State of the game for the given side to move. Whether any legal move
+     * exists only depends on the position, so that part is cached per Zobrist
+     * key; repetition and the fifty-move rule depend on the move history and
+     * are checked on every call.
+     * 
+     * @param colour
+     * @return
+     */
+    public gameState getGameState(pieceColour colour) {
+        int c = colour.ordinal();
+        if (stateCache[c] == null || stateCacheKeys[c] != zobristHash) {
+            gameState state = gameState.PLAYING;
+            if (!hasAnyLegalMove(colour)) {
+                state = isInCheck(colour) ? gameState.CHECKMATE : gameState.STALEMATE;
+            } else if (hasInsufficientMaterial()) {
+                state = gameState.INSUFFICIENT_MATERIAL;
+            }
+            stateCacheKeys[c] = zobristHash;
+            stateCache[c] = state;
+        }
 
-        } else {
-            setPiece(move.to, p);
-            zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][move.to.getIndex()];
+        if (stateCache[c] != gameState.PLAYING) {
+            return stateCache[c];
+        }
+        if (repetitions() >= 3) {
+            return gameState.THREEFOLD;
+        }
+        if (halfmoveClock() >= 100) {
+            return gameState.FIFTY_MOVE;
+        }
+        return gameState.PLAYING;
+    }
 
+    /**
+     * Whether the given side has at least one legal move. Stops at the first
+     * one found and tries the king first, since it is the cheapest to check
+     * and the only piece that matters in double check.
+     * 
+     * @param colour
+     * @return
+     */
+    public boolean hasAnyLegalMove(pieceColour colour) {
+        int us = colour.ordinal();
+        int them = 1 - us;
+        int kingSq = findKing(colour).getIndex();
+        long targets = ~colourBitboards[us] & ~typeBitboards[pieceType.KING.ordinal()];
+
+        if (addKingMoves(legalityBuffer, 0, getPiece(kingSq), them, targets) > 0) {
+            return true;
+        }
+
+        long checkers = attackersTo(kingSq, getOccupancy()) & colourBitboards[them];
+        if (Long.bitCount(checkers) > 1) {
+            return false;
+        }
+        if (checkers != 0) {
+            targets &= checkers | Attacks.between[kingSq][Long.numberOfTrailingZeros(checkers)];
+        }
+
+        long pinned = pinnedPieces(kingSq, us);
+        for (Piece p : getPieceList(colour)) {
+            int sq = p.getCoordinates().getIndex();
+            if (p.getType() == pieceType.KING) {
+                continue;
+            }
+            long pieceTargets = targets;
+            if ((pinned & (1L << sq)) != 0) {
+                if (checkers != 0) {
+                    continue; // A pinned piece can never resolve a check
+                }
+                pieceTargets &= Attacks.line[kingSq][sq];
+            }
+            if (p.generateMoves(this, pieceTargets, legalityBuffer, 0) > 0) {
+                return true;
+            }
         }
+        // Castling is never the only legal move: the king could step to f1/d1 instead
+        return addEnPassantMoves(legalityBuffer, 0, colour) > 0;
+    }
 
-        // NEW EP possibility?
-        if (p.getType() == pieceType.PAWN && Math.abs(move.from.getRow() - move.to.getRow()) == 2) {
-            zobristHash ^= Zobrist.passantFiles[move.to.getCol()];
+    /**
+     * Neither side can ever mate: bare kings, a single minor piece, or only
+     * bishops that all stand on the same colour.
+     * 
+     * @return
+     */
+    public boolean hasInsufficientMaterial() {
+        if ((typeBitboards[pieceType.PAWN.ordinal()] | typeBitboards[pieceType.ROOK.ordinal()]
+                | typeBitboards[pieceType.QUEEN.ordinal()]) != 0) {
+            return false;
+        }
+        long minors = typeBitboards[pieceType.KNIGHT.ordinal()] | typeBitboards[pieceType.BISHOP.ordinal()];
+        if (Long.bitCount(minors) <= 1) {
+            return true;
         }
+        long darkSquares = 0xAA55AA55AA55AA55L; // a1 is dark
+        return typeBitboards[pieceType.KNIGHT.ordinal()] == 0
+                && ((minors & darkSquares) == 0 || (minors & ~darkSquares) == 0);
+    }
+
+    /**
+     * Plies since the last capture or pawn move among the moves played.
+     * 
+     * @return
+     */
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
 
-        // XOR IN the NEW castling rights
-        zobristHash ^= Zobrist.castlingRights[getCastlingMask()];
-        lastMove = move;
+    /**
+     * Plays a Move object. This is the API boundary: the move is packed and
+     * handed to makeMove, then the Move is filled in (captured piece,
+     * promotion, hash) for callers that inspect it afterwards.
+     * 
+     * @param move
+     */
+    public void doMove(Move move) {
+        boolean movedBefore = move.piece.hasMoved();
+        makeMove(encode(move));
+        move.setCapturedPiece(undoStack[ply - 1].captured);
+        move.setPieceWasMovedBefore(movedBefore);
+        if (move.piece.getType() == pieceType.PAWN && MoveCode.isPromotion(undoStack[ply - 1].move)) {
+            move.setPromotion(true);
+            move.setPromotedPiece(getPiece(move.to));
+        }
         move.setZob(zobristHash); // To stop repeating
-        history.push(move);
+        history.add(move);
     }
 
     public void undoMove() {
         if (history.isEmpty())
             return;
 
-        Move last = history.pop();
-        Piece p = last.piece; // NOTE: If promoting this was original pawn
-        int colourIdx = (p.getColour() == pieceColour.WHITE) ? 0 : 1;
+        history.remove(history.size() - 1);
+        unmakeMove();
+    }
+
+    /**
+     * Plays a packed move (see MoveCode) and records what is needed to take it
+     * back in the per-ply undo arrays. Allocates nothing unless the move
+     * promotes.
+     * 
+     * @param move
+     */
+    public void makeMove(int move) {
+        int from = MoveCode.from(move);
+        int to = MoveCode.to(move);
+        Piece p = getPiece(from);
+        int colourIdx = p.getColour().ordinal();
         int enemyIdx = 1 - colourIdx;
+        growUndoStack();
+
+        Undo u = undoStack[ply];
+        u.move = move;
+        u.mover = p;
+        u.movedBefore = p.hasMoved();
+        u.castlingRights = castlingRights;
+        u.enPassantSquare = enPassantSquare;
+        u.halfmoveClock = halfmoveClock;
+        keys[ply] = zobristHash;
 
-        // 1. XOR OUT CURRENT STATE
-        // Toggle turn back to previous player
+        // 1. XOR OUT OLD STATE
         zobristHash ^= Zobrist.turn;
+        if (enPassantSquare >= 0) {
+            zobristHash ^= Zobrist.passantFiles[enPassantSquare % 8];
+        }
 
-        // Remove the current castling rights hash
-        zobristHash ^= Zobrist.castlingRights[getCastlingMask()];
+        // 2. MOVE PIECE
+        zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][from];
+
+        Piece victim = null;
+        if (MoveCode.isCastling(move)) {
+            handleCastling(from, to, colourIdx, true);
+        } else if (MoveCode.isEnPassant(move)) {
+            // The victim sits beside us: our rank, the target's file
+            int victimSq = (from & ~7) | (to & 7);
+            victim = getPiece(victimSq);
+            zobristHash ^= Zobrist.pieces[enemyIdx][pieceType.PAWN.ordinal()][victimSq];
+            clearSquare(7 - victimSq / 8, victimSq % 8);
+            removePieceFromSystem(victim);
+        } else if (getPiece(to) != null) {
+            victim = getPiece(to);
+            zobristHash ^= Zobrist.pieces[enemyIdx][victim.getType().ordinal()][to];
+            removePieceFromSystem(victim);
+        }
+        u.captured = victim;
+
+        clearSquare(7 - from / 8, from % 8);
+        p.setMoved(true);
 
-        // 2. REMOVE EP HASH CREATED BY THIS MOVE
-        // If THIS move was a double push, it created an EP square. Remove it.
-        if (p.getType() == pieceType.PAWN && Math.abs(last.from.getRow() - last.to.getRow()) == 2) {
-            zobristHash ^= Zobrist.passantFiles[last.to.getCol()];
+        // 3. XOR IN NEW STATE
+        pieceType promotion = MoveCode.promotion(move);
+        if (promotion != null) {
+            removePieceFromSystem(p);
+            Piece q = createPromotionPiece(promotion, p.getColour(), Coordinates.of(to));
+            setPiece(Coordinates.of(to), q);
+            addPieceToSystem(q);
+            zobristHash ^= Zobrist.pieces[colourIdx][promotion.ordinal()][to];
+        } else {
+            setPiece(Coordinates.of(to), p);
+            zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][to];
         }
 
-        // 3. REVERSE PIECE MOVEMENT & HASHING
+        enPassantSquare = MoveCode.isDoublePush(move) ? (from + to) / 2 : -1;
+        if (enPassantSquare >= 0) {
+            zobristHash ^= Zobrist.passantFiles[enPassantSquare % 8];
+        }
 
-        int promotionRow = (p.getColour() == pieceColour.WHITE) ? 0 : 7;
-        if (p.getType() == pieceType.PAWN && last.getMoveTo().getRow() == promotionRow) {
+        int rights = castlingRights & castlingMasks[from] & castlingMasks[to];
+        if (rights != castlingRights) {
+            zobristHash ^= Zobrist.castlingRights[castlingRights] ^ Zobrist.castlingRights[rights];
+            castlingRights = rights;
+        }
 
-            // Remove the promoted piece (e.g., Queen) from the 'to' square
-            Piece q = last.getPromotedPiece();
-            zobristHash ^= Zobrist.pieces[colourIdx][q.getType().ordinal()][last.to.getIndex()];
-            removePieceFromSystem(q);
-            grid[last.to.getRow()][last.to.getCol()] = null;
+        halfmoveClock = (victim != null || p.getType() == pieceType.PAWN) ? 0 : halfmoveClock + 1;
+        if (!whiteToMove) {
+            fullmoveNumber++;
+        }
+        whiteToMove = !whiteToMove;
+        ply++;
+    }
 
-            // Queen promotedPiece = (Queen) grid[last.to.getRow()][last.to.getCol()]; //
-            // This is the queen
-            // zobristHash ^=
-            // Zobrist.pieces[colourIdx][promotedPiece.getType().ordinal()][last.to.getIndex()];
-            // removePieceFromSystem(promotedPiece);
-            // grid[last.to.getRow()][last.to.getCol()] = null;
+    /**
+     * Takes back the last move played with makeMove (or doMove). Castling
+     * rights, en passant, the clock and the hash come straight from the undo
+     * record.
+     */
+    public void unmakeMove() {
+        if (ply <= copyBase)
+            return;
 
-            // Put the original Pawn back on the 'from' square
-            setPiece(last.from, p);
+        ply--;
+        Undo u = undoStack[ply];
+        int move = u.move;
+        int from = MoveCode.from(move);
+        int to = MoveCode.to(move);
+        Piece p = u.mover;
+        int colourIdx = p.getColour().ordinal();
+
+        // 1. REVERSE PIECE MOVEMENT
+        if (MoveCode.isPromotion(move)) {
+            // Swap the promoted piece back for the original pawn
+            Piece q = getPiece(to);
+            removePieceFromSystem(q);
+            clearSquare(7 - to / 8, to % 8);
+            setPiece(Coordinates.of(from), p);
             addPieceToSystem(p);
-            zobristHash ^= Zobrist.pieces[colourIdx][pieceType.PAWN.ordinal()][last.from.getIndex()];
         } else {
-            // Standard reverse: move piece from 'to' back to 'from'
-            zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][last.to.getIndex()];
-            grid[last.to.getRow()][last.to.getCol()] = null;
-
-            setPiece(last.from, p);
-            zobristHash ^= Zobrist.pieces[colourIdx][p.getType().ordinal()][last.from.getIndex()];
+            clearSquare(7 - to / 8, to % 8);
+            setPiece(Coordinates.of(from), p);
         }
+        p.setMoved(u.movedBefore);
 
-        // Restore moved status
-        p.setMoved(last.getPieceWasMovedBefore());
-
-        // 4. RESTORE CAPTURED PIECES
-        Piece victim = last.getCapturedPiece();
+        // 2. RESTORE CAPTURED PIECES
+        Piece victim = u.captured;
         if (victim != null) {
             addPieceToSystem(victim);
-            if (last.isEnPassant()) {
-                // Restore En Passant victim to their specific row
-                grid[victim.getCoordinates().getRow()][victim.getCoordinates().getCol()] = victim;
-                zobristHash ^= Zobrist.pieces[enemyIdx][pieceType.PAWN.ordinal()][victim.getCoordinates().getIndex()];
-            } else {
-                // Standard capture: put victim back on the 'to' square
-                grid[last.to.getRow()][last.to.getCol()] = victim;
-                zobristHash ^= Zobrist.pieces[enemyIdx][victim.getType().ordinal()][last.to.getIndex()];
-            }
+            // En passant victims never left their own square, which is still recorded on them
+            setPiece(victim.getCoordinates(), victim);
+            u.captured = null;
         }
 
-        // 5. RESTORE CASTLING ROOKS
-        if (last.isCastling()) {
-            handleCastling(last, colourIdx, false); // false = undoing
+        // 3. RESTORE CASTLING ROOKS
+        if (MoveCode.isCastling(move)) {
+            handleCastling(from, to, colourIdx, false); // false = undoing
         }
 
-        // 6. RESTORE PREVIOUS EP HASH
-        // If the move BEFORE this one was a double pawn push, we need to put that EP
-        // square back in the hash
-        if (!history.isEmpty()) {
-            Move prev = history.peek();
-            if (prev.piece.getType() == pieceType.PAWN && Math.abs(prev.from.getRow() - prev.to.getRow()) == 2) {
-                zobristHash ^= Zobrist.passantFiles[prev.to.getCol()];
+        // 4. RESTORE IRREVERSIBLE STATE
+        castlingRights = u.castlingRights;
+        enPassantSquare = u.enPassantSquare;
+        halfmoveClock = u.halfmoveClock;
+        whiteToMove = !whiteToMove;
+        if (!whiteToMove) {
+            fullmoveNumber--;
+        }
+        zobristHash = keys[ply];
+    }
+
+    /**
+     * Passes the turn without moving, for null-move pruning: flips the side to
+     * move and clears any en passant square. Must be taken back with
+     * unmakeNullMove, and never played while in check.
+     */
+    public void makeNullMove() {
+        growUndoStack();
+        Undo u = undoStack[ply];
+        u.move = MoveCode.none;
+        u.mover = null;
+        u.captured = null;
+        u.castlingRights = castlingRights;
+        u.enPassantSquare = enPassantSquare;
+        u.halfmoveClock = halfmoveClock;
+        keys[ply] = zobristHash;
+
+        zobristHash ^= Zobrist.turn;
+        if (enPassantSquare >= 0) {
+            zobristHash ^= Zobrist.passantFiles[enPassantSquare % 8];
+            enPassantSquare = -1;
+        }
+        // Positions before a null move can't be repeated by real moves after it
+        halfmoveClock = 0;
+        if (!whiteToMove) {
+            fullmoveNumber++;
+        }
+        whiteToMove = !whiteToMove;
+        ply++;
+    }
+
+    public void unmakeNullMove() {
+        ply--;
+        Undo u = undoStack[ply];
+        enPassantSquare = u.enPassantSquare;
+        halfmoveClock = u.halfmoveClock;
+        whiteToMove = !whiteToMove;
+        if (!whiteToMove) {
+            fullmoveNumber--;
+        }
+        zobristHash = keys[ply];
+    }
+
+    /**
+     * Packs a Move object for makeMove. Flags the Move does not carry (moves
+     * typed in by a player) are worked out from the board: a pawn moving
+     * diagonally onto an empty square is en passant, a king moving two files is
+     * castling, and a pawn reaching the last rank promotes to a queen.
+     * 
+     * @param move
+     * @return
+     */
+    public int encode(Move move) {
+        int from = move.from.getIndex();
+        int to = move.to.getIndex();
+        pieceType type = move.piece.getType();
+        Piece target = getPiece(to);
+        pieceType captured = (target == null) ? null : target.getType();
+        pieceType promotion = null;
+        int flags = 0;
+
+        if (type == pieceType.PAWN) {
+            if (move.isEnPassant() || (target == null && from % 8 != to % 8)) {
+                flags |= MoveCode.flagEnPassant;
+                captured = pieceType.PAWN;
+            } else if (Math.abs(to - from) == 16) {
+                flags |= MoveCode.flagDoublePush;
             }
-            this.lastMove = prev;
+            if (to / 8 == 0 || to / 8 == 7) {
+                promotion = (move.getPromotionType() == null) ? pieceType.QUEEN : move.getPromotionType();
+            }
+        } else if (type == pieceType.KING && (move.isCastling() || Math.abs(to - from) == 2)) {
+            flags |= MoveCode.flagCastling;
+        }
+        return MoveCode.encode(from, to, type, captured, promotion, flags);
+    }
+
+    /**
+     * Builds a Move object for a packed move in the current position, for
+     * handing results back to the game loop or a player.
+     * 
+     * @param move
+     * @return
+     */
+    public Move toMove(int move) {
+        Piece p = getPiece(MoveCode.from(move));
+        Move m = new Move(p, Coordinates.of(MoveCode.from(move)), Coordinates.of(MoveCode.to(move)));
+        m.setIsCastling(MoveCode.isCastling(move));
+        m.setIsEnPassant(MoveCode.isEnPassant(move));
+        m.setPromotionType(MoveCode.promotion(move));
+        m.setPromotion(MoveCode.isPromotion(move));
+        if (MoveCode.isEnPassant(move)) {
+            m.setCapturedPiece(getPiece((MoveCode.from(move) & ~7) | (MoveCode.to(move) & 7)));
         } else {
-            this.lastMove = null;
+            m.setCapturedPiece(getPiece(MoveCode.to(move)));
         }
+        return m;
+    }
 
-        // 7. XOR IN THE RESTORED CASTLING RIGHTS
-        zobristHash ^= Zobrist.castlingRights[getCastlingMask()];
+    private void growUndoStack() {
+        if (ply < undoStack.length) {
+            return;
+        }
+        int size = undoStack.length;
+        undoStack = Arrays.copyOf(undoStack, size * 2);
+        keys = Arrays.copyOf(keys, size * 2);
+        for (int i = size; i < undoStack.length; i++) {
+            undoStack[i] = new Undo();
+        }
     }
 
     /**
      * Handles the Rook's movement and Zobrist hashing during castling.
      * 
-     * @param move      The castling move
+     * @param kingFrom  Square the king castles from
+     * @param kingTo    Square the king castles to
      * @param colourIdx 0 for White, 1 for Black
-     * @param isDoing   True if executing doMove, False if executing undoMove
+     * @param isDoing   True if executing makeMove, False if executing unmakeMove
+     *                  (which restores the hash from the undo record instead)
      */
-    private void handleCastling(Move move, int colourIdx, boolean isDoing) {
-        int row = move.from.getRow();
-        boolean isKingside = (move.to.getCol() == 6);
+    private void handleCastling(int kingFrom, int kingTo, int colourIdx, boolean isDoing) {
+        int row = 7 - kingFrom / 8;
+        boolean isKingside = (kingTo % 8 == 6);
 
         // Rook positions:
         // Kingside: starts at col 7, ends at col 5
@@ -271,33 +634,119 @@ public class Board {
         if (rook == null || rook.getType() != pieceType.ROOK)
             return;
 
-        // 1. Hash out the Rook from its current position
-        zobristHash ^= Zobrist.pieces[colourIdx][pieceType.ROOK.ordinal()][rook.getCoordinates().getIndex()];
-
-        // 2. Physically move the Rook
-        grid[row][fromCol] = null;
-        // We reuse the move's rank to calculate the new coordinate
-        Coordinates newRookCoords = new Coordinates(move.from.getRank(), (char) ('a' + toCol));
+        // 1. Physically move the Rook
+        clearSquare(row, fromCol);
+        Coordinates newRookCoords = Coordinates.of(squareIndex(row, toCol));
         setPiece(newRookCoords, rook);
 
-        // 3. Update Rook state (moved status)
+        // 2. Update Rook state (moved status)
         rook.setMoved(isDoing);
 
-        // 4. Hash the Rook into its new position
-        zobristHash ^= Zobrist.pieces[colourIdx][pieceType.ROOK.ordinal()][newRookCoords.getIndex()];
+        // 3. Hash the Rook from its old square into its new one
+        if (isDoing) {
+            zobristHash ^= Zobrist.pieces[colourIdx][pieceType.ROOK.ordinal()][squareIndex(row, fromCol)]
+                    ^ Zobrist.pieces[colourIdx][pieceType.ROOK.ordinal()][newRookCoords.getIndex()];
+        }
     }
 
     private void setPiece(Coordinates c, Piece p) {
+        // Whatever was standing here (a capture victim) leaves the bitboards first
+        clearSquare(c.getRow(), c.getCol());
         grid[c.getRow()][c.getCol()] = p;
         if (p != null) {
             p.setCoordinates(c);
+            if (p.getType() == pieceType.KING) {
+                kingSquares[p.getColour().ordinal()] = c.getIndex();
+            }
+            long bit = 1L << c.getIndex();
+            colourBitboards[p.getColour().ordinal()] |= bit;
+            typeBitboards[p.getType().ordinal()] |= bit;
+        }
+    }
+
+    /**
+     * Empties a square in both the grid and the bitboards. Does not touch the
+     * piece lists, that is still the job of removePieceFromSystem.
+     * 
+     * @param row
+     * @param col
+     */
+    private void clearSquare(int row, int col) {
+        Piece old = grid[row][col];
+        if (old == null) {
+            return;
         }
+        long bit = 1L << squareIndex(row, col);
+        colourBitboards[old.getColour().ordinal()] &= ~bit;
+        typeBitboards[old.getType().ordinal()] &= ~bit;
+        grid[row][col] = null;
+    }
+
+    /**
+     * Converts array indices to the 0-63 square index used by the bitboards
+     * (same as Coordinates.getIndex()).
+     * 
+     * @param row
+     * @param col
+     * @return
+     */
+    public static int squareIndex(int row, int col) {
+        return (7 - row) * 8 + col;
+    }
+
+    /**
+     * Bitboard of every occupied square.
+     * 
+     * @return
+     */
+    public long getOccupancy() {
+        return colourBitboards[0] | colourBitboards[1];
+    }
+
+    public long getColourBitboard(pieceColour colour) {
+        return colourBitboards[colour.ordinal()];
+    }
+
+    /**
+     * Bitboard of every piece of this type, both colours.
+     * 
+     * @param type
+     * @return
+     */
+    public long getTypeBitboard(pieceType type) {
+        return typeBitboards[type.ordinal()];
+    }
+
+    public long getPieceBitboard(pieceColour colour, pieceType type) {
+        return colourBitboards[colour.ordinal()] & typeBitboards[type.ordinal()];
+    }
+
+    /**
+     * Whether the given side has anything besides pawns and its king. Without
+     * such pieces zugzwang is common, which breaks null-move pruning.
+     * 
+     * @param colour
+     * @return
+     */
+    public boolean hasNonPawnMaterial(pieceColour colour) {
+        long pawnsAndKings = typeBitboards[pieceType.PAWN.ordinal()] | typeBitboards[pieceType.KING.ordinal()];
+        return (colourBitboards[colour.ordinal()] & ~pawnsAndKings) != 0;
     }
 
     public Piece getPiece(Coordinates c) {
         return grid[c.getRow()][c.getCol()];
     }
 
+    /**
+     * Piece on a 0-63 square index, or null.
+     * 
+     * @param sq
+     * @return
+     */
+    public Piece getPiece(int sq) {
+        return grid[7 - sq / 8][sq % 8];
+    }
+
     /**
      * Row, Col
      * 
@@ -350,12 +799,12 @@ public class Board {
             }
 
             // Square 1: Where the king starts
-            if (isSquareAttacked(new Coordinates(move.getMoveFrom().getRank(), 'e'), move.piece.getColour()))
+            if (isSquareAttacked(Coordinates.of(move.getMoveFrom().getRank(), 'e'), move.piece.getColour()))
                 return false;
 
             // Square 2: The square the king passes through
             char middleFile = (endCol == 6) ? 'f' : 'd';
-            if (isSquareAttacked(new Coordinates(move.getMoveFrom().getRank(), middleFile), move.piece.getColour()))
+            if (isSquareAttacked(Coordinates.of(move.getMoveFrom().getRank(), middleFile), move.piece.getColour()))
                 return false;
         } else if (!move.piece.isValidMove(move.getMoveTo(), this)) {
             return false;
@@ -379,70 +828,59 @@ public class Board {
         if (!history.isEmpty()) {
             history.clear();
         }
+        for (int i = 0; i < ply; i++) {
+            undoStack[i].mover = null;
+            undoStack[i].captured = null;
+        }
+        ply = 0;
+        copyBase = 0;
+        castlingRights = 0;
+        enPassantSquare = -1;
+        halfmoveClock = 0;
+        whiteToMove = true;
+        fullmoveNumber = 1;
+        Arrays.fill(stateCache, null);
 
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
                 grid[row][col] = null;
             }
         }
+        Arrays.fill(colourBitboards, 0L);
+        Arrays.fill(typeBitboards, 0L);
+        Arrays.fill(kingSquares, -1);
     }
 
+    /**
+     * Sets the board up from a FEN, or the starting position if fen is null or
+     * empty. Every field is used: side to move, castling rights, en passant
+     * square and both clocks.
+     * 
+     * @param fen
+     * @throws IllegalArgumentException if fen is malformed
+     */
     public void initialise(String fen) {
-        // Fully clear board
-        clearBoard();
-
-        // Default starting position if FEN is empty
         if (fen == null || fen.isEmpty()) {
-            fen = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
-        }
-
-        String[] parts = fen.split(" ");
-        String boardPart = parts[0]; // The piece placement section
-
-        String[] ranks = boardPart.split("/");
-        int currentRank = 8; // FEN starts at Rank 8
-
-        for (String rankContent : ranks) {
-            int fileIndex = 0; // 0 = 'a', 1 = 'b', etc.
-
-            for (int i = 0; i < rankContent.length(); i++) {
-                char c = rankContent.charAt(i);
-
-                if (Character.isDigit(c)) {
-                    // If it's a number, skip those squares
-                    fileIndex += Character.getNumericValue(c);
-                } else {
-                    // If it's a letter, it's a piece
-                    char file = (char) ('a' + fileIndex);
-                    Coordinates coords = new Coordinates(currentRank, file);
-
-                    pieceColour color = Character.isUpperCase(c) ? pieceColour.WHITE : pieceColour.BLACK;
-                    Piece piece = createPieceFromChar(c, color, coords);
-
-                    setPiece(coords, piece);
-                    fileIndex++;
-                }
-            }
-            currentRank--;
+            fen = Fen.startPosition;
         }
+        setPosition(Fen.parse(fen));
+    }
 
-        // Update Game State (Whose turn is it?)
-        if (parts.length > 1) {
-            // this.isWhiteTurn = parts[1].equals("w");
-        }
+    private Piece createPiece(pieceType type, pieceColour color, Coordinates coords) {
+        return switch (type) {
+            case PAWN -> new Pawn(color, coords);
+            case KING -> new King(color, coords);
+            default -> createPromotionPiece(type, color, coords);
+        };
     }
 
-    // Helper to clean up the logic
-    private Piece createPieceFromChar(char c, pieceColour color, Coordinates coords) {
-        char type = Character.toLowerCase(c);
+    private Piece createPromotionPiece(pieceType type, pieceColour color, Coordinates coords) {
         return switch (type) {
-            case 'p' -> new Pawn(color, coords);
-            case 'n' -> new Knight(color, coords);
-            case 'b' -> new Bishop(color, coords);
-            case 'r' -> new Rook(color, coords);
-            case 'q' -> new Queen(color, coords);
-            case 'k' -> new King(color, coords);
-            default -> throw new IllegalArgumentException("Unknown FEN piece: " + c);
+            case KNIGHT -> new Knight(color, coords);
+            case BISHOP -> new Bishop(color, coords);
+            case ROOK -> new Rook(color, coords);
+            case QUEEN -> new Queen(color, coords);
+            default -> throw new IllegalArgumentException("Cannot promote to " + type);
         };
     }
 
@@ -457,46 +895,129 @@ public class Board {
 
     /**
      * Takes as parameters the coordinates of the square and the colour of
-     * ALLIED pieces. Internally computes arraylist of enemy pieces.
+     * ALLIED pieces. Works outward from the square through the attack tables
+     * rather than asking every enemy piece.
      * 
      * @param coords
      * @param colour
      * @return
      */
     public boolean isSquareAttacked(Coordinates coords, pieceColour colour) {
-        ArrayList<Piece> enemyPieces = (colour == pieceColour.WHITE) ? blackPieces : whitePieces;
-        for (Piece p : enemyPieces) {
-            if (p.getType() == pieceType.PAWN) {
-                if (((Pawn) p).canAttack(coords, this)) {
-                    return true;
-                }
-            } else {
-                if (p.isValidMove(coords, this)) {
-                    return true;
-                }
-            }
-        }
+        return attackersTo(coords.getIndex(), colour == pieceColour.WHITE ? pieceColour.BLACK : pieceColour.WHITE) != 0;
+    }
 
-        return false;
+    /**
+     * Bitboard of the pieces of the given colour attacking a square.
+     * 
+     * @param sq     0-63 square index
+     * @param colour Colour of the ATTACKING pieces
+     * @return
+     */
+    public long attackersTo(int sq, pieceColour colour) {
+        return attackersTo(sq, getOccupancy()) & colourBitboards[colour.ordinal()];
     }
 
-    public Coordinates findKing(pieceColour colour) throws RuntimeException {
-        ArrayList<Piece> pieceList = (colour == pieceColour.WHITE) ? whitePieces : blackPieces;
+    /**
+     * Bitboard of the pieces of both colours attacking a square, with the board
+     * occupied as described by occupancy. Pieces missing from occupancy (e.g.
+     * already captured in an exchange, or lifted off a ray) neither attack nor
+     * block, so sliders behind them show up as x-ray attackers.
+     * 
+     * @param sq
+     * @param occupancy
+     * @return
+     */
+    public long attackersTo(int sq, long occupancy) {
+        long diagonals = typeBitboards[pieceType.BISHOP.ordinal()] | typeBitboards[pieceType.QUEEN.ordinal()];
+        long straights = typeBitboards[pieceType.ROOK.ordinal()] | typeBitboards[pieceType.QUEEN.ordinal()];
+        long pawns = typeBitboards[pieceType.PAWN.ordinal()];
+        // A black pawn on sq would attack exactly the squares white pawns attack sq from
+        long attackers = (Attacks.pawnAttacks[1][sq] & pawns & colourBitboards[0])
+                | (Attacks.pawnAttacks[0][sq] & pawns & colourBitboards[1])
+                | (Attacks.knightAttacks[sq] & typeBitboards[pieceType.KNIGHT.ordinal()])
+                | (Attacks.kingAttacks[sq] & typeBitboards[pieceType.KING.ordinal()])
+                | (Attacks.bishopAttacks(sq, occupancy) & diagonals)
+                | (Attacks.rookAttacks(sq, occupancy) & straights);
+        return attackers & occupancy;
+    }
 
-        for (Piece p : pieceList) {
-            if (p.getType() == pieceType.KING) {
-                return p.getCoordinates();
-            }
+    /**
+     * Static exchange evaluation: the material the side making a move can
+     * expect to win or lose on its target square if both sides keep
+     * recapturing with their least valuable piece and either may stop when
+     * it suits them. Sliders lined up behind a capturer join in once it has
+     * moved (x-rays). Pins and checks are ignored. Works for quiet moves too,
+     * where it says whether the piece is simply lost on its new square.
+     * 
+     * @param move MoveCode of a move for the side to move
+     * @return Material balance of the exchange, e.g. -800 for a queen taking a
+     *         pawn defended by a pawn
+     */
+    public int see(int move) {
+        int to = MoveCode.to(move);
+        long fromBit = 1L << MoveCode.from(move);
+        int side = ((colourBitboards[0] & fromBit) != 0) ? 1 : 0; // Side to recapture
+        long occupancy = getOccupancy() ^ fromBit;
+        int[] gain = seeGains;
+
+        gain[0] = MoveCode.isCapture(move) ? pieceValues[MoveCode.captured(move).ordinal()] : 0;
+        int onSquare = pieceValues[MoveCode.piece(move).ordinal()]; // Value of the piece a recapture wins
+        if (MoveCode.isPromotion(move)) {
+            int promoted = pieceValues[MoveCode.promotion(move).ordinal()];
+            gain[0] += promoted - pieceValues[0];
+            onSquare = promoted;
         }
-        // If we reach here, something went wrong. Sync and retry.
-        syncPieceLists();
-        pieceList = (colour == pieceColour.WHITE) ? whitePieces : blackPieces; // Re fetch lists
-        for (Piece p : pieceList) {
-            if (p.getType() == pieceType.KING) {
-                return p.getCoordinates();
+        if (MoveCode.isEnPassant(move)) {
+            occupancy ^= 1L << (to + (side == 1 ? -8 : 8));
+        }
+
+        int d = 0;
+        long attackers = attackersTo(to, occupancy);
+        while (d < gain.length - 1) {
+            long mine = attackers & colourBitboards[side];
+            if (mine == 0) {
+                break;
             }
+            int type = 0;
+            while ((mine & typeBitboards[type]) == 0) {
+                type++;
+            }
+            long bit = Long.lowestOneBit(mine & typeBitboards[type]);
+            // A king can't take back onto a square that is still defended
+            if (type == pieceType.KING.ordinal()
+                    && (attackersTo(to, occupancy ^ bit) & colourBitboards[side ^ 1]) != 0) {
+                break;
+            }
+            d++;
+            gain[d] = onSquare - gain[d - 1];
+            onSquare = pieceValues[type];
+            occupancy ^= bit;
+            attackers = attackersTo(to, occupancy);
+            side ^= 1;
+        }
+
+        // Each side only recaptures if it comes out ahead
+        while (d > 0) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+            d--;
+        }
+        return gain[0];
+    }
+
+    /**
+     * Square of the given side's king. Kept up to date whenever a king is
+     * placed, so this is a lookup rather than a search.
+     * 
+     * @param colour
+     * @return
+     * @throws RuntimeException if that side has no king on the board
+     */
+    public Coordinates findKing(pieceColour colour) throws RuntimeException {
+        int sq = kingSquares[colour.ordinal()];
+        if (sq < 0) {
+            throw new RuntimeException("The " + colour + " king could not be found!");
         }
-        throw new RuntimeException("Even after a sync the " + colour + " king could not be found!");
+        return Coordinates.of(sq);
     }
 
     public void printBoard(pieceColour side) {
@@ -706,10 +1227,9 @@ public class Board {
         if (p == null) {
             return;
         }
-        // Avoid adding duplicates to the internal piece lists
-        java.util.List<Piece> list = getPieceList(p.getColour());
+        List<Piece> list = getPieceList(p.getColour());
+        p.setListIndex(list.size());
         list.add(p);
-
     }
 
     private void removePieceFromSystem(Piece p) {
@@ -720,171 +1240,407 @@ public class Board {
         // Grid updates should be handled by move/undo logic to avoid accidental
         // disappearance/duplication.
         List<Piece> list = getPieceList(p.getColour());
-        // List<Piece> newList = new ArrayList<>();
-        // for (Piece piece : list){
-        // // Add to new list if NOT piece to be removed
-        // if
-        // (!p.getCoordinates().toString().equals(piece.getCoordinates().toString())){
-        // newList.add(piece);
-        // }
-        // }
-
-        // if (!newList.isEmpty()){
-        // list = newList;
-        // }
-
-        if (list.removeIf(piece -> piece == p)) {
-            // System.out.println("removed!");
-        } else {
+        int index = p.getListIndex();
+        if (index < 0 || index >= list.size() || list.get(index) != p) {
             System.out.println("Couldn't remove " + p.getSymbol());
+            return;
         }
+        // Move the last piece into the gap instead of shifting everything down
+        Piece last = list.remove(list.size() - 1);
+        if (last != p) {
+            list.set(index, last);
+            last.setListIndex(index);
+        }
+        p.setListIndex(-1);
     }
 
+    /**
+     * Generates only legal moves. Checkers and pinned pieces are worked out once
+     * up front, so no candidate move has to be played to see if it leaves the
+     * king in check.
+     * 
+     * @param colour
+     * @return
+     */
     public List<Move> getLegalMoves(pieceColour colour) {
-        // TODO: use magic bitboards
-        List<Move> legalMoves = new ArrayList<>();
+        int[] buffer = new int[256];
+        int count = generateLegalMoves(colour, buffer, 0);
+        List<Move> legalMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legalMoves.add(toMove(buffer[i]));
+        }
+        return legalMoves;
+    }
+
+    /**
+     * Allocation-free version of getLegalMoves for the search. Writes packed
+     * moves (see MoveCode) into the buffer from the given index.
+     * 
+     * @param colour
+     * @param moves  Needs room for 218 more moves, the most any position has
+     * @param count  Index to start writing at
+     * @return The new count
+     */
+    public int generateLegalMoves(pieceColour colour, int[] moves, int count) {
+        return generate(colour, moves, count, ~0L, ~0L, true, true);
+    }
+
+    /**
+     * Legal captures (en passant included) and promotions, the moves
+     * quiescence search looks at. Together with generateQuiets this produces
+     * exactly the moves of generateLegalMoves, so the search can generate the
+     * quiet moves only once these failed to cut off.
+     * 
+     * @param colour
+     * @param moves
+     * @param count
+     * @return The new count
+     */
+    public int generateNoisy(pieceColour colour, int[] moves, int count) {
+        long enemy = colourBitboards[1 - colour.ordinal()];
+        return generate(colour, moves, count, enemy, enemy | (~getOccupancy() & promotionRank(colour)), true,
+                false);
+    }
+
+    /**
+     * Legal moves onto empty squares (including castling), except promotions.
+     * 
+     * @param colour
+     * @param moves
+     * @param count
+     * @return The new count
+     */
+    public int generateQuiets(pieceColour colour, int[] moves, int count) {
+        long empty = ~getOccupancy();
+        return generate(colour, moves, count, empty, empty & ~promotionRank(colour), false, true);
+    }
+
+    // Rank 8 for White, rank 1 for Black
+    private static long promotionRank(pieceColour colour) {
+        return (colour == pieceColour.WHITE) ? 0xFF00000000000000L : 0xFFL;
+    }
+
+    /**
+     * Shared generator: only moves landing on a square in mask (pawnMask for
+     * pawns, so promotions can be split from other pushes) are produced.
+     */
+    private int generate(pieceColour colour, int[] moves, int count, long mask, long pawnMask, boolean enPassant,
+            boolean castling) {
+        int us = colour.ordinal();
+        int them = 1 - us;
+        int kingSq = findKing(colour).getIndex();
+        long occupancy = getOccupancy();
+        long checkers = attackersTo(kingSq, occupancy) & colourBitboards[them];
+
+        if (checkers != 0) {
+            return addEvasions(moves, count, colour, kingSq, checkers, mask, pawnMask, enPassant);
+        }
+
+        long pinned = pinnedPieces(kingSq, us);
+        // Never generate king captures, and never land on our own pieces
+        long legal = ~colourBitboards[us] & ~typeBitboards[pieceType.KING.ordinal()];
+        long targets = mask & legal;
+        long pawnTargets = pawnMask & legal;
+        List<Piece> pieceList = (colour == pieceColour.WHITE) ? whitePieces : blackPieces;
+        for (Piece p : pieceList) {
+            int sq = p.getCoordinates().getIndex();
+            long pieceTargets = (p.getType() == pieceType.PAWN) ? pawnTargets : targets;
+            if (p.getType() == pieceType.KING) {
+                count = addKingMoves(moves, count, p, them, targets);
+            } else if ((pinned & (1L << sq)) != 0) {
+                // A pinned piece can only slide along the pin line
+                count = p.generateMoves(this, pieceTargets & Attacks.line[kingSq][sq], moves, count);
+            } else {
+                count = p.generateMoves(this, pieceTargets, moves, count);
+            }
+        }
+        if (enPassant) {
+            count = addEnPassantMoves(moves, count, colour);
+        }
+        if (castling) {
+            count = addCastlingMoves(moves, count, colour);
+        }
+        return count;
+    }
+
+    /**
+     * Check evasions: king moves, plus captures of the checker and blocks when
+     * there is only one checker.
+     */
+    private int addEvasions(int[] moves, int count, pieceColour colour, int kingSq, long checkers, long mask,
+            long pawnMask, boolean enPassant) {
+        int us = colour.ordinal();
+        int them = 1 - us;
         List<Piece> pieceList = (colour == pieceColour.WHITE) ? whitePieces : blackPieces;
-        for (Piece p : new ArrayList<>(pieceList)) {
-            for (int tRow = 0; tRow < 8; tRow++) {
-                for (int tCol = 0; tCol < 8; tCol++) {
-                    // Skip own pieces
-                    Piece target = grid[tRow][tCol];
-                    if (target != null) {
-                        if (target.getColour() == colour || target.getType() == pieceType.KING) {
-                            continue;
-                        }
-                    }
-                    Coordinates to = new Coordinates(8 - tRow, (char) ('a' + tCol));
-                    // See if move is valid first before expensive check
-                    if (p.isValidMove(to, this)) {
-                        Move move = new Move(p, p.getCoordinates(), to);
-                        if (isMoveLegal(move)) { // Expensive check
-                            legalMoves.add(move);
-                        }
-                    }
+        long targets = mask & ~colourBitboards[us] & ~typeBitboards[pieceType.KING.ordinal()];
+
+        count = addKingMoves(moves, count, getPiece(kingSq), them, targets);
+        // Double check: only the king can move
+        if (Long.bitCount(checkers) > 1) {
+            return count;
+        }
+
+        int checkerSq = Long.numberOfTrailingZeros(checkers);
+        long checkMask = checkers | Attacks.between[kingSq][checkerSq];
+        long pinned = pinnedPieces(kingSq, us);
+        for (Piece p : pieceList) {
+            int sq = p.getCoordinates().getIndex();
+            // A pinned piece can never resolve a check
+            if (p.getType() != pieceType.KING && (pinned & (1L << sq)) == 0) {
+                count = p.generateMoves(this, checkMask & ((p.getType() == pieceType.PAWN) ? pawnMask : mask), moves,
+                        count);
+            }
+        }
+        return enPassant ? addEnPassantMoves(moves, count, colour) : count;
+    }
+
+    private int addKingMoves(int[] moves, int count, Piece king, int enemyIdx, long targets) {
+        int from = king.getCoordinates().getIndex();
+        targets &= Attacks.kingAttacks[from];
+        // Take the king off the board so it cannot hide behind itself on a checking ray
+        long occupancy = getOccupancy() & ~(1L << from);
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            if ((attackersTo(to, occupancy) & colourBitboards[enemyIdx]) == 0) {
+                Piece victim = getPiece(to);
+                moves[count++] = MoveCode.encode(from, to, pieceType.KING,
+                        (victim == null) ? null : victim.getType(), null, 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether a packed move is legal for the given side in the current
+     * position. Used to try hash and killer moves before generating anything,
+     * since those may come from a different position.
+     * 
+     * @param move
+     * @param colour
+     * @return
+     */
+    public boolean isLegal(int move, pieceColour colour) {
+        if (move == MoveCode.none) {
+            return false;
+        }
+        int from = MoveCode.from(move);
+        int to = MoveCode.to(move);
+        Piece p = getPiece(from);
+        if (p == null || p.getColour() != colour || p.getType() != MoveCode.piece(move)) {
+            return false;
+        }
+
+        // Rare enough to settle by generating
+        if (MoveCode.isCastling(move) || MoveCode.isEnPassant(move)) {
+            int count = generateLegalMoves(colour, legalityBuffer, 0);
+            for (int i = 0; i < count; i++) {
+                if (legalityBuffer[i] == move) {
+                    return true;
                 }
             }
+            return false;
         }
-        addEnPassantMoves(legalMoves, colour); // This broken fucking code doesn't work
-        addCastlingMoves(legalMoves, colour);
-        return legalMoves;
+
+        Piece victim = getPiece(to);
+        pieceType captured = MoveCode.captured(move);
+        if (victim == null) {
+            if (captured != null) {
+                return false;
+            }
+        } else if (victim.getColour() == colour || victim.getType() != captured || captured == pieceType.KING) {
+            return false;
+        }
+
+        if (p.getType() == pieceType.PAWN) {
+            int forward = (colour == pieceColour.WHITE) ? 8 : -8;
+            boolean lastRank = (to / 8 == 0 || to / 8 == 7);
+            if (lastRank != MoveCode.isPromotion(move)) {
+                return false;
+            }
+            if (captured != null) {
+                if ((Attacks.pawnAttacks[colour.ordinal()][from] & (1L << to)) == 0) {
+                    return false;
+                }
+            } else if (MoveCode.isDoublePush(move)) {
+                int startRow = (colour == pieceColour.WHITE) ? 1 : 6;
+                if (from / 8 != startRow || to != from + 2 * forward || getPiece(from + forward) != null) {
+                    return false;
+                }
+            } else if (to != from + forward) {
+                return false;
+            }
+        } else if ((p.getAttacks(this) & (1L << to)) == 0) {
+            return false;
+        }
+
+        // Pseudo-legal, so play it and look at our king
+        makeMove(move);
+        boolean safe = !isInCheck(colour);
+        unmakeMove();
+        return safe;
+    }
+
+    /**
+     * Pieces of the given colour that are pinned to their own king by an enemy
+     * slider.
+     */
+    private long pinnedPieces(int kingSq, int colourIdx) {
+        long enemy = colourBitboards[1 - colourIdx];
+        long occupancy = getOccupancy();
+        long snipers = enemy & ((Attacks.rookAttacks(kingSq, 0)
+                & (typeBitboards[pieceType.ROOK.ordinal()] | typeBitboards[pieceType.QUEEN.ordinal()]))
+                | (Attacks.bishopAttacks(kingSq, 0)
+                        & (typeBitboards[pieceType.BISHOP.ordinal()] | typeBitboards[pieceType.QUEEN.ordinal()])));
+        long pinned = 0;
+        while (snipers != 0) {
+            int sniperSq = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between[kingSq][sniperSq] & occupancy;
+            // Exactly one piece in the way, and it is ours
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & colourBitboards[colourIdx]) != 0) {
+                pinned |= blockers;
+            }
+        }
+        return pinned;
     }
 
     /**
      * Helper method to help the AI recognise it can castle
      * 
      * @param moves
+     * @param count
      * @param colour
+     * @return
      */
-    private void addCastlingMoves(List<Move> moves, pieceColour colour) {
-        // White rank is 1, Black rank is 8
-        int rank = (colour == pieceColour.WHITE) ? 1 : 8;
-        int row = (colour == pieceColour.WHITE) ? 7 : 0; // For grid access
+    private int addCastlingMoves(int[] moves, int count, pieceColour colour) {
+        // White castles on rank 1 (row 7), Black on rank 8 (row 0)
+        int row = (colour == pieceColour.WHITE) ? 7 : 0;
+        // Bit 0 kingside, bit 1 queenside
+        int rights = (colour == pieceColour.WHITE) ? castlingRights : castlingRights >> 2;
+        if ((rights & 3) == 0) {
+            return count;
+        }
 
-        Coordinates kingPos = new Coordinates(rank, 'e');
+        int kingSq = squareIndex(row, 4);
         Piece king = grid[row][4]; // 'e' is index 4
 
-        if (king == null || king.getType() != pieceType.KING || king.getColour() != colour || king.hasMoved()) {
-            return;
+        if (king == null || king.getType() != pieceType.KING || king.getColour() != colour) {
+            return count;
         }
 
-        if (isSquareAttacked(kingPos, colour)) {
-            return;
+        if (isSquareAttacked(Coordinates.of(kingSq), colour)) {
+            return count;
         }
 
         // --- KINGSIDE CASTLING ---
         Piece kRook = grid[row][7]; // 'h' is index 7
-        if (kRook != null && kRook.getType() == pieceType.ROOK && !kRook.hasMoved()) {
+        if ((rights & 1) != 0 && kRook != null && kRook.getType() == pieceType.ROOK) {
             // Path empty: f (5) and g (6)
             if (grid[row][5] == null && grid[row][6] == null) {
-                Coordinates fSq = new Coordinates(rank, 'f');
-                Coordinates gSq = new Coordinates(rank, 'g');
+                Coordinates fSq = Coordinates.of(squareIndex(row, 5));
+                Coordinates gSq = Coordinates.of(squareIndex(row, 6));
 
                 if (!isSquareAttacked(fSq, colour) && !isSquareAttacked(gSq, colour)) {
-                    Move m = new Move(king, kingPos, gSq);
-                    m.setIsCastling(true);
-                    moves.add(m);
+                    moves[count++] = MoveCode.encode(kingSq, gSq.getIndex(), pieceType.KING, null, null,
+                            MoveCode.flagCastling);
                 }
             }
         }
 
         // --- QUEENSIDE CASTLING ---
         Piece qRook = grid[row][0]; // 'a' is index 0
-        if (qRook != null && qRook.getType() == pieceType.ROOK && !qRook.hasMoved()) {
+        if ((rights & 2) != 0 && qRook != null && qRook.getType() == pieceType.ROOK) {
             // Path empty: b (1), c (2), d (3)
             if (grid[row][1] == null && grid[row][2] == null && grid[row][3] == null) {
-                Coordinates cSq = new Coordinates(rank, 'c');
-                Coordinates dSq = new Coordinates(rank, 'd');
+                Coordinates cSq = Coordinates.of(squareIndex(row, 2));
+                Coordinates dSq = Coordinates.of(squareIndex(row, 3));
 
                 if (!isSquareAttacked(cSq, colour) && !isSquareAttacked(dSq, colour)) {
-                    Move m = new Move(king, kingPos, cSq);
-                    m.setIsCastling(true);
-                    moves.add(m);
+                    moves[count++] = MoveCode.encode(kingSq, cSq.getIndex(), pieceType.KING, null, null,
+                            MoveCode.flagCastling);
                 }
             }
         }
+        return count;
     }
 
-    private void addEnPassantMoves(List<Move> moves, pieceColour colour) {
-        if (history.isEmpty()) {
-            return;
+    private int addEnPassantMoves(int[] moves, int count, pieceColour colour) {
+        // STRICT CHECK: The last move MUST be a pawn double push
+        if (enPassantSquare < 0) {
+            return count;
         }
-        Move lastMove = history.peek();
 
-        // STRICT CHECK: The last piece moved MUST be a Pawn
-        if (lastMove.piece.getType() != pieceType.PAWN) {
-            return;
+        // The empty square BEHIND the victim
+        int target = enPassantSquare;
+        int victimSq = (colour == pieceColour.WHITE) ? target - 8 : target + 8;
+        Piece victim = getPiece(victimSq);
+        // Sanity check: The victim must be an enemy pawn
+        if (victim == null || victim.getColour() == colour || victim.getType() != pieceType.PAWN) {
+            return count;
         }
 
-        // STRICT CHECK: The last move MUST be a double push
-        if (Math.abs(lastMove.from.getRow() - lastMove.to.getRow()) != 2) {
-            return;
+        // Our pawns would be left and right of the enemy pawn
+        long capturers = Attacks.pawnAttacks[1 - colour.ordinal()][target] & getPieceBitboard(colour, pieceType.PAWN);
+        while (capturers != 0) {
+            int from = Long.numberOfTrailingZeros(capturers);
+            capturers &= capturers - 1;
+            if (isEnPassantSafe(from, victimSq, target, colour)) {
+                moves[count++] = MoveCode.encode(from, target, pieceType.PAWN, pieceType.PAWN, null,
+                        MoveCode.flagEnPassant);
+            }
         }
+        return count;
+    }
 
-        int passingRow = lastMove.to.getRow();
-        int passingCol = lastMove.to.getCol();
-
-        // Determine where our pawns would be (left and right of the enemy pawn)
-        int[] offsets = { -1, 1 };
-
-        for (int offset : offsets) {
-            int myCol = passingCol + offset;
-
-            // Bounds check
-            if (myCol >= 0 && myCol < 8) {
-                Piece myPawn = grid[passingRow][myCol];
-
-                // Check if a piece exists, is a PAWN, and is OUR colour
-                if (myPawn != null &&
-                        myPawn.getType() == pieceType.PAWN &&
-                        myPawn.getColour() == colour) {
-
-                    // Determine target square (The empty square BEHIND the victim)
-                    // White moves UP (row index decreases), Black moves DOWN (row index increases)
-                    int targetRow = (colour == pieceColour.WHITE) ? passingRow - 1 : passingRow + 1;
-
-                    Coordinates target = new Coordinates(8 - targetRow, (char) ('a' + passingCol));
-
-                    // Create the move
-                    Move epMove = new Move(myPawn, myPawn.getCoordinates(), target);
-                    epMove.setIsEnPassant(true);
+    /**
+     * En passant removes two pieces from one rank at once, which can expose the
+     * king in ways the pin mask does not catch, so the resulting occupancy is
+     * checked directly.
+     */
+    private boolean isEnPassantSafe(int from, int victimSq, int target, pieceColour colour) {
+        int us = colour.ordinal();
+        int kingSq = findKing(colour).getIndex();
+        long occupancy = (getOccupancy() & ~(1L << from) & ~(1L << victimSq)) | (1L << target);
+        return (attackersTo(kingSq, occupancy) & colourBitboards[1 - us]) == 0;
+    }
 
-                    // PRE-CALCULATE CAPTURE to avoid doMove side-effect reliance logic quirks
-                    // The piece being captured is the one that just moved (lastMove.piece)
-                    // We must ensure this is actually the piece at grid[passingRow][passingCol]
-                    Piece victim = grid[passingRow][passingCol];
+    /**
+     * Whether the given side's king is currently attacked.
+     * 
+     * @param colour
+     * @return
+     */
+    public boolean isInCheck(pieceColour colour) {
+        return isSquareAttacked(findKing(colour), colour);
+    }
 
-                    // Sanity check: The victim must exist and be the enemy colour
-                    if (victim != null && victim.getColour() != colour && victim == lastMove.piece) {
-                        epMove.setCapturedPiece(victim);
-                        // We safely simulate the move
-                        if (isMoveSafe(epMove)) {
-                            moves.add(epMove);
-                        }
-                    }
-                }
+    /**
+     * How many times the current position has occurred among the moves
+     * played, counting this one. Only positions since the last capture or pawn
+     * move can repeat, and only those with the same side to move, so the scan
+     * goes back two plies at a time and stops at the halfmove clock.
+     * 
+     * @return
+     */
+    public int repetitions() {
+        int count = 1;
+        int oldest = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 2; i >= oldest; i -= 2) {
+            if (keys[i] == zobristHash) {
+                count++;
             }
         }
+        return count;
+    }
+
+    /**
+     * Last move played on the board, packed as a MoveCode.
+     * 
+     * @return MoveCode.none (0) if no move has been played, or after a null move
+     */
+    public int getLastMoveCode() {
+        return (ply > 0) ? undoStack[ply - 1].move : MoveCode.none;
     }
 
     /**
@@ -896,71 +1652,51 @@ public class Board {
         if (history.isEmpty()) {
             return null;
         }
-        // Stack#peek returns the top element without removing it
-        return history.peek();
+        return history.get(history.size() - 1);
     }
 
     // Disclaimer: I have no clue how any of this works.
+    // isWhiteTurn also becomes the side to move, for callers that keep track of
+    // the turn themselves.
     public void initZobrist(boolean isWhiteTurn) {
-        zobristHash = 0;
+        whiteToMove = isWhiteTurn;
+        zobristHash = computeZobrist(isWhiteTurn);
+    }
+
+    /**
+     * Hash of the current position computed from scratch, without touching
+     * zobristHash. Perft compares the two to catch incremental update bugs.
+     * 
+     * @param isWhiteTurn
+     * @return
+     */
+    public long computeZobrist(boolean isWhiteTurn) {
+        long hash = 0;
         for (Piece p : getPieceList(pieceColour.WHITE)) {
             int type = p.getType().ordinal(); // map to 0-5
-            zobristHash ^= Zobrist.pieces[0][type][p.getCoordinates().getIndex()];
+            hash ^= Zobrist.pieces[0][type][p.getCoordinates().getIndex()];
         }
         for (Piece p : getPieceList(pieceColour.BLACK)) {
             int type = p.getType().ordinal(); // map to 0-5
-            zobristHash ^= Zobrist.pieces[1][type][p.getCoordinates().getIndex()];
+            hash ^= Zobrist.pieces[1][type][p.getCoordinates().getIndex()];
         }
         if (!isWhiteTurn) {
-            zobristHash ^= Zobrist.turn;
-        }
-        if (lastMove != null && lastMove.piece.getType() == pieceType.PAWN) {
-            if (Math.abs(lastMove.to.getRow() - lastMove.from.getRow()) == 2) {
-                int file = lastMove.to.getCol(); // 0-7
-                // Use the same file index convention as doMove and guard against OOB
-                if (file >= 0 && file < Zobrist.passantFiles.length) {
-                    zobristHash ^= Zobrist.passantFiles[file];
-                }
-            }
+            hash ^= Zobrist.turn;
+        }
+        if (enPassantSquare >= 0) {
+            hash ^= Zobrist.passantFiles[enPassantSquare % 8];
         }
-        zobristHash ^= Zobrist.castlingRights[getCastlingMask()];
+        hash ^= Zobrist.castlingRights[castlingRights];
+        return hash;
     }
 
-    // Nor do I know how this works.
+    /**
+     * Current castling rights as a 4-bit mask (see the Position constants).
+     * 
+     * @return
+     */
     public int getCastlingMask() {
-        int mask = 0;
-
-        // --- WHITE RIGHTS ---
-        Piece whiteKing = grid[7][4]; // e1
-        if (whiteKing != null && whiteKing.getType() == pieceType.KING && !whiteKing.hasMoved()) {
-            // Check Kingside Rook (h1)
-            Piece wkRook = grid[7][7];
-            if (wkRook != null && wkRook.getType() == pieceType.ROOK && !wkRook.hasMoved()) {
-                mask |= 1;
-            }
-            // Check Queenside Rook (a1)
-            Piece wqRook = grid[7][0];
-            if (wqRook != null && wqRook.getType() == pieceType.ROOK && !wqRook.hasMoved()) {
-                mask |= 2;
-            }
-        }
-
-        // --- BLACK RIGHTS ---
-        Piece blackKing = grid[0][4]; // e8
-        if (blackKing != null && blackKing.getType() == pieceType.KING && !blackKing.hasMoved()) {
-            // Check Kingside Rook (h8)
-            Piece bkRook = grid[0][7];
-            if (bkRook != null && bkRook.getType() == pieceType.ROOK && !bkRook.hasMoved()) {
-                mask |= 4;
-            }
-            // Check Queenside Rook (a8)
-            Piece bqRook = grid[0][0];
-            if (bqRook != null && bqRook.getType() == pieceType.ROOK && !bqRook.hasMoved()) {
-                mask |= 8;
-            }
-        }
-
-        return mask;
+        return castlingRights;
     }
 
     public void historyToPGN() {
@@ -1,24 +1,51 @@
 package board;
 
-public class Coordinates{ 
+public class Coordinates{
+
+  // One immutable instance per square, indexed by getIndex(). Instances are
+  // canonical, so two Coordinates for the same square are always ==.
+  private static final Coordinates[] squares = new Coordinates[64];
+  static {
+    for(int i = 0; i < 64; i++){
+      squares[i] = new Coordinates(i / 8 + 1, (char) ('a' + i % 8));
+    }
+  }
 
   // Chess variables
   private final int rank; // 1-8 ONLY
   private final char file; // a-h ONLY
+  private final int index;
+
+  private Coordinates(int rank, char file){
+    this.rank = rank;
+    this.file = file;
+    this.index = (rank-1)*8 + (file - 'a');
+  }
+
+  /**
+   * Canonical instance for a 0-63 square index (a1 = 0, h8 = 63). No bounds
+   * checks, meant for the move generator.
+   * @param index
+   * @return
+   */
+  public static Coordinates of(int index){
+    return squares[index];
+  }
 
-  public Coordinates(int rank, char file){
+  /**
+   * Canonical instance for a rank and file, e.g. of(4, 'e') for e4.
+   * @param rank
+   * @param file
+   * @return
+   */
+  public static Coordinates of(int rank, char file){
     if(rank < 1 || rank > 8){
       throw new IllegalArgumentException("Rank out of bounds.");
-    }else{
-      this.rank = rank;
     }
-
     if(file < 'a' || file > 'h'){
       throw new IllegalArgumentException("File out of bounds.");
-    }else{
-      this.file = file;
     }
-
+    return squares[(rank-1)*8 + (file - 'a')];
   }
 
   public int getRank(){
@@ -30,7 +57,7 @@ public class Coordinates{
   }
 
   // Array based indices here
-  
+
   public int getRow(){
     return 8 - rank;
   }
@@ -48,7 +75,7 @@ public class Coordinates{
    * @return
    */
   public int getIndex(){
-    return (rank-1)*8 + (file - 'a');
+    return index;
   }
 
-} 
\ No newline at end of file
+}
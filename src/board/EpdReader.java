@@ -0,0 +1,267 @@
+package board;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Streams positions out of an EPD file, one line at a time. Each line is a
+ * FEN (the two clocks may be left out) followed by operations, e.g.
+ * r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - bm Ng5; id "Two knights";
+ *
+ * Lines are read into one reused buffer and scanned in place. Nothing is
+ * split or matched with a regex, and operands only become Strings when asked
+ * for, so a file of millions of positions costs little more than parsing the
+ * positions themselves. Blank lines and lines starting with # are skipped.
+ *
+ * Usage:
+ * try (EpdReader epd = EpdReader.open(path)) {
+ *     while (epd.next()) {
+ *         Position position = epd.getPosition();
+ *         String best = epd.get("bm");
+ *     }
+ * }
+ */
+public class EpdReader implements Closeable {
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int bufferPos = 0;
+    private int bufferLen = 0;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private int lineNumber = 0;
+    private Position position;
+
+    // Operation i has its opcode at line[opStart[i], opEnd[i]) and its
+    // operand at line[argStart[i], argEnd[i])
+    private int[] opStart = new int[8];
+    private int[] opEnd = new int[8];
+    private int[] argStart = new int[8];
+    private int[] argEnd = new int[8];
+    private int opCount = 0;
+
+    public EpdReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @param path
+     * @return A reader over the UTF-8 file at path
+     * @throws IOException
+     */
+    public static EpdReader open(Path path) throws IOException {
+        return new EpdReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Moves on to the next position in the file.
+     *
+     * @return False once the file is used up
+     * @throws IOException
+     * @throws IllegalArgumentException if the line's FEN is malformed
+     */
+    public boolean next() throws IOException {
+        while (readLine()) {
+            lineNumber++;
+            int start = Fen.skipSpaces(line, 0, line.length());
+            if (start == line.length() || line.charAt(start) == '#') {
+                continue;
+            }
+            parseLine(start);
+            return true;
+        }
+        position = null;
+        opCount = 0;
+        return false;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Line in the file the current position came from, counting from 1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getOperationCount() {
+        return opCount;
+    }
+
+    public String getOpcode(int index) {
+        return line.substring(opStart[index], opEnd[index]);
+    }
+
+    /**
+     * @param index
+     * @return The operand of operation index with any surrounding quotes
+     *         removed, or an empty string if it has none
+     */
+    public String getOperand(int index) {
+        int start = argStart[index];
+        int end = argEnd[index];
+        if (end - start >= 2 && line.charAt(start) == '"' && line.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        return line.substring(start, end);
+    }
+
+    public boolean has(String opcode) {
+        return indexOf(opcode) >= 0;
+    }
+
+    /**
+     * @param opcode e.g. "bm", "am" or "id"
+     * @return The operand of the first operation with that opcode (see
+     *         getOperand), or null if the line has none
+     */
+    public String get(String opcode) {
+        int index = indexOf(opcode);
+        return (index < 0) ? null : getOperand(index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int indexOf(String opcode) {
+        for (int i = 0; i < opCount; i++) {
+            int length = opEnd[i] - opStart[i];
+            if (length != opcode.length()) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && line.charAt(opStart[i] + j) == opcode.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Fills line with the next line of input, without its line ending
+    private boolean readLine() throws IOException {
+        line.setLength(0);
+        boolean readAny = false;
+        while (true) {
+            if (bufferPos == bufferLen) {
+                bufferLen = in.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    return readAny;
+                }
+            }
+            readAny = true;
+            int i = bufferPos;
+            while (i < bufferLen && buffer[i] != '\n') {
+                i++;
+            }
+            line.append(buffer, bufferPos, i - bufferPos);
+            bufferPos = i;
+            if (i < bufferLen) {
+                bufferPos++; // Past the '\n'
+                if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+                    line.setLength(line.length() - 1);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void parseLine(int start) {
+        int length = line.length();
+
+        // Four FEN fields, then the clocks if both are there
+        int fenEnd = start;
+        for (int field = 0; field < 4; field++) {
+            fenEnd = tokenEnd(Fen.skipSpaces(line, fenEnd, length));
+        }
+        int clock = Fen.skipSpaces(line, fenEnd, length);
+        int clockEnd = tokenEnd(clock);
+        int fullmove = Fen.skipSpaces(line, clockEnd, length);
+        int fullmoveEnd = tokenEnd(fullmove);
+        if (isNumber(clock, clockEnd) && isNumber(fullmove, fullmoveEnd)) {
+            fenEnd = fullmoveEnd;
+        }
+
+        try {
+            position = Fen.parse(line, start, fenEnd);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+        }
+
+        // Operations: an opcode, then everything up to the next ';' outside quotes
+        opCount = 0;
+        int i = fenEnd;
+        while (true) {
+            while (i < length && (Fen.isSpace(line.charAt(i)) || line.charAt(i) == ';')) {
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            int op = i;
+            i = tokenEnd(i);
+            int opcodeEnd = i;
+            int arg = Fen.skipSpaces(line, i, length);
+            boolean quoted = false;
+            for (i = arg; i < length && (quoted || line.charAt(i) != ';'); i++) {
+                if (line.charAt(i) == '"') {
+                    quoted = !quoted;
+                }
+            }
+            int end = i;
+            while (end > arg && Fen.isSpace(line.charAt(end - 1))) {
+                end--;
+            }
+            addOperation(op, opcodeEnd, arg, end);
+        }
+    }
+
+    private void addOperation(int op, int opcodeEnd, int arg, int end) {
+        if (opCount == opStart.length) {
+            int size = opCount * 2;
+            opStart = Arrays.copyOf(opStart, size);
+            opEnd = Arrays.copyOf(opEnd, size);
+            argStart = Arrays.copyOf(argStart, size);
+            argEnd = Arrays.copyOf(argEnd, size);
+        }
+        opStart[opCount] = op;
+        opEnd[opCount] = opcodeEnd;
+        argStart[opCount] = arg;
+        argEnd[opCount] = end;
+        opCount++;
+    }
+
+    private int tokenEnd(int i) {
+        while (i < line.length() && !Fen.isSpace(line.charAt(i)) && line.charAt(i) != ';') {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isNumber(int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) < '0' || line.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -122,6 +122,9 @@ public class Eval {
         pstValues.put(pieceType.KING, PSTKingEarly);
     }
 
+    // Scratch buffer for mobility move generation
+    private final int[] moveBuffer = new int[256];
+
     public Eval() {
     }
 
@@ -130,8 +133,6 @@ public class Eval {
         // cache commonly requested lists/positions to avoid repeated lookups
         List<Piece> whitePieces = board.getPieceList(pieceColour.WHITE);
         List<Piece> blackPieces = board.getPieceList(pieceColour.BLACK);
-        List<Move> whiteMoves = board.getLegalMoves(pieceColour.WHITE);
-        List<Move> blackMoves = board.getLegalMoves(pieceColour.BLACK);
         Coordinates whiteKing = board.findKing(pieceColour.WHITE);
         Coordinates blackKing = board.findKing(pieceColour.BLACK);
         phase = getGamePhase(whitePieces, blackPieces); // 1 is opening, 0 is endgame
@@ -141,7 +142,7 @@ public class Eval {
         totalScore += deltaMaterial;
         totalScore += evalPST(whitePieces, blackPieces);
         totalScore += evalTropism(whitePieces, blackPieces, whiteKing, blackKing);
-        totalScore += evalMobility(whiteMoves, blackMoves); // This is too expensive
+        totalScore += evalMobility(board); // This is too expensive
         totalScore += evalSpecialBonuses(whitePieces, blackPieces);
         totalScore += evalPositionals(board, whitePieces, blackPieces);
         //totalScore += evalOpening(whitePieces, blackPieces);
@@ -212,13 +213,15 @@ public class Eval {
         }
     }
 
-    private int evalMobility(List<Move> whiteMoves, List<Move> blackMoves) {
+    private int evalMobility(Board board) {
         int mobilityScore = 0;
-        for (Move m : whiteMoves) {
-            mobilityScore += mobilityForPiece(m.piece.getType());
+        int count = board.generateLegalMoves(pieceColour.WHITE, moveBuffer, 0);
+        for (int i = 0; i < count; i++) {
+            mobilityScore += mobilityForPiece(MoveCode.piece(moveBuffer[i]));
         }
-        for (Move m : blackMoves) {
-            mobilityScore -= mobilityForPiece(m.piece.getType());
+        count = board.generateLegalMoves(pieceColour.BLACK, moveBuffer, 0);
+        for (int i = 0; i < count; i++) {
+            mobilityScore -= mobilityForPiece(MoveCode.piece(moveBuffer[i]));
         }
         return mobilityScore;
     }
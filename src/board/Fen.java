@@ -0,0 +1,241 @@
+package board;
+
+import enums.pieceColour;
+import enums.pieceType;
+
+/**
+ * Reads and writes Forsyth-Edwards Notation, e.g.
+ * rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1
+ *
+ * The parser scans a range of any CharSequence in place, without splitting
+ * it, so EpdReader can hand over a slice of its line buffer.
+ */
+public final class Fen {
+
+    public static final String startPosition = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Indexed by pieceType ordinal
+    private static final String pieceChars = "PNBRQK";
+
+    private Fen() {
+    }
+
+    /**
+     * @param fen
+     * @return
+     * @throws IllegalArgumentException if fen is malformed
+     */
+    public static Position parse(CharSequence fen) {
+        return parse(fen, 0, fen.length());
+    }
+
+    /**
+     * Parses the FEN held in fen[start, end). Only the piece placement is
+     * required: missing fields default to white to move, no castling, no en
+     * passant square and clocks of 0 and 1.
+     *
+     * @param fen
+     * @param start
+     * @param end
+     * @return
+     * @throws IllegalArgumentException if the FEN is malformed, either side
+     *                                  does not have exactly one king, or a
+     *                                  pawn stands on the first or last rank
+     */
+    public static Position parse(CharSequence fen, int start, int end) {
+        long[] colours = new long[2];
+        long[] types = new long[6];
+
+        // 1. Piece placement, rank 8 first
+        int i = skipSpaces(fen, start, end);
+        int rank = 7;
+        int file = 0;
+        for (; i < end && !isSpace(fen.charAt(i)); i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (file != 8 || rank == 0) {
+                    throw malformed(fen, start, end, "bad rank " + (rank + 1));
+                }
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int type = pieceChars.indexOf(Character.toUpperCase(c));
+                if (type < 0) {
+                    throw malformed(fen, start, end, "unknown piece " + c);
+                }
+                if (file < 8) {
+                    long bit = 1L << (rank * 8 + file);
+                    colours[Character.isUpperCase(c) ? 0 : 1] |= bit;
+                    types[type] |= bit;
+                }
+                file++;
+            }
+            if (file > 8) {
+                throw malformed(fen, start, end, "bad rank " + (rank + 1));
+            }
+        }
+        if (rank != 0 || file != 8) {
+            throw malformed(fen, start, end, "expected 8 ranks of 8 squares");
+        }
+        long kings = types[pieceType.KING.ordinal()];
+        if (Long.bitCount(kings & colours[0]) != 1 || Long.bitCount(kings & colours[1]) != 1) {
+            throw malformed(fen, start, end, "each side needs exactly one king");
+        }
+        if ((types[pieceType.PAWN.ordinal()] & 0xFF000000000000FFL) != 0) {
+            throw malformed(fen, start, end, "pawn on the first or last rank");
+        }
+
+        // 2. Side to move
+        boolean whiteToMove = true;
+        i = skipSpaces(fen, i, end);
+        int fieldEnd = fieldEnd(fen, i, end);
+        if (i < fieldEnd) {
+            if (fieldEnd - i != 1 || (fen.charAt(i) != 'w' && fen.charAt(i) != 'b')) {
+                throw malformed(fen, start, end, "side to move must be w or b");
+            }
+            whiteToMove = fen.charAt(i) == 'w';
+        }
+
+        // 3. Castling rights
+        int castling = 0;
+        i = skipSpaces(fen, fieldEnd, end);
+        fieldEnd = fieldEnd(fen, i, end);
+        if (i < fieldEnd && !(fieldEnd - i == 1 && fen.charAt(i) == '-')) {
+            for (; i < fieldEnd; i++) {
+                castling |= switch (fen.charAt(i)) {
+                    case 'K' -> Position.whiteKingside;
+                    case 'Q' -> Position.whiteQueenside;
+                    case 'k' -> Position.blackKingside;
+                    case 'q' -> Position.blackQueenside;
+                    default -> throw malformed(fen, start, end, "bad castling rights");
+                };
+            }
+        }
+
+        // 4. En passant square
+        int enPassant = -1;
+        i = skipSpaces(fen, fieldEnd, end);
+        fieldEnd = fieldEnd(fen, i, end);
+        if (i < fieldEnd && !(fieldEnd - i == 1 && fen.charAt(i) == '-')) {
+            char f = fen.charAt(i);
+            char r = (fieldEnd - i == 2) ? fen.charAt(i + 1) : 0;
+            if (f < 'a' || f > 'h' || r != (whiteToMove ? '6' : '3')) {
+                throw malformed(fen, start, end, "bad en passant square");
+            }
+            enPassant = (r - '1') * 8 + (f - 'a');
+            // The pawn that just double pushed must be on the square past it,
+            // and the square it skipped must be empty
+            int victim = whiteToMove ? enPassant - 8 : enPassant + 8;
+            long theirPawns = types[pieceType.PAWN.ordinal()] & colours[whiteToMove ? 1 : 0];
+            if ((theirPawns & (1L << victim)) == 0 || ((colours[0] | colours[1]) & (1L << enPassant)) != 0) {
+                throw malformed(fen, start, end, "no pawn to take en passant");
+            }
+        }
+
+        // 5. Clocks
+        int halfmoveClock = 0;
+        int fullmoveNumber = 1;
+        i = skipSpaces(fen, fieldEnd, end);
+        fieldEnd = fieldEnd(fen, i, end);
+        if (i < fieldEnd) {
+            halfmoveClock = parseNumber(fen, i, fieldEnd, start, end);
+            i = skipSpaces(fen, fieldEnd, end);
+            fieldEnd = fieldEnd(fen, i, end);
+            if (i < fieldEnd) {
+                fullmoveNumber = Math.max(1, parseNumber(fen, i, fieldEnd, start, end));
+            }
+        }
+        if (skipSpaces(fen, fieldEnd, end) != end) {
+            throw malformed(fen, start, end, "unexpected text after the clocks");
+        }
+
+        return Position.create(colours, types, castling, enPassant, whiteToMove, halfmoveClock, fullmoveNumber);
+    }
+
+    /**
+     * @param position
+     * @return The full six-field FEN of position
+     */
+    public static String format(Position position) {
+        StringBuilder fen = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                pieceType type = position.getType(rank * 8 + file);
+                if (type == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char c = pieceChars.charAt(type.ordinal());
+                fen.append(position.getColour(rank * 8 + file) == pieceColour.WHITE ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (rank > 0) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(position.isWhiteToMove() ? " w " : " b ");
+        int castling = position.getCastling();
+        if (castling == 0) {
+            fen.append('-');
+        }
+        String rights = "KQkq"; // Same order as the castling bits
+        for (int bit = 0; bit < 4; bit++) {
+            if ((castling & (1 << bit)) != 0) {
+                fen.append(rights.charAt(bit));
+            }
+        }
+
+        int enPassant = position.getEnPassant();
+        if (enPassant < 0) {
+            fen.append(" -");
+        } else {
+            fen.append(' ').append((char) ('a' + enPassant % 8)).append((char) ('1' + enPassant / 8));
+        }
+        fen.append(' ').append(position.getHalfmoveClock()).append(' ').append(position.getFullmoveNumber());
+        return fen.toString();
+    }
+
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    static int skipSpaces(CharSequence s, int i, int end) {
+        while (i < end && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int fieldEnd(CharSequence s, int i, int end) {
+        while (i < end && !isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int parseNumber(CharSequence fen, int i, int fieldEnd, int start, int end) {
+        int n = 0;
+        for (; i < fieldEnd; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9' || n > 100000) {
+                throw malformed(fen, start, end, "bad move clock");
+            }
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    private static IllegalArgumentException malformed(CharSequence fen, int start, int end, String reason) {
+        return new IllegalArgumentException("Invalid FEN (" + reason + "): " + fen.subSequence(start, end));
+    }
+}
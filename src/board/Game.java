@@ -19,8 +19,8 @@ public class Game {
 
     public void start() {
         BufferedReader keyboard = new BufferedReader(new InputStreamReader(System.in));
-        String gameStateWhite = board.getGameState(pieceColour.WHITE);
-        String gameStateBlack = board.getGameState(pieceColour.BLACK);
+        gameState gameStateWhite = board.getGameState(pieceColour.WHITE);
+        gameState gameStateBlack = board.getGameState(pieceColour.BLACK);
         String userInput = "";
         pieceColour playerSide = null;
         int depth = 5; // 5 plys by default
@@ -50,7 +50,7 @@ public class Game {
             System.out.println("Not a number!");
         }
 
-        while (gameStateWhite.equals("PLAYING") && gameStateBlack.equals("PLAYING")) {
+        while (gameStateWhite == gameState.PLAYING && gameStateBlack == gameState.PLAYING) {
             board.printBoard(playerSide);
             boolean isPlayerTurn = (isWhiteTurn && playerSide == pieceColour.WHITE) ||
                     (!isWhiteTurn && playerSide == pieceColour.BLACK);
@@ -143,15 +143,34 @@ public class Game {
         }
 
         board.printBoard(playerSide);
-        if (gameStateWhite.equals("CHECKMATE")) {
+        if (gameStateWhite == gameState.CHECKMATE) {
             System.out.println("Black wins by checkmate! ");
-        } else if (gameStateBlack.equals("CHECKMATE")) {
+        } else if (gameStateBlack == gameState.CHECKMATE) {
             System.out.println("White wins by checkmate! ");
-        } else if (gameStateBlack.equals("STALEMATE")) {
+        } else if (gameStateBlack == gameState.STALEMATE || gameStateWhite == gameState.STALEMATE) {
             System.out.println("Draw by stalemate! ");
+        } else {
+            System.out.println("Draw! " + drawReason(gameStateWhite, gameStateBlack));
         }
     }
 
+    /**
+     * Describes a drawn result for printing.
+     * 
+     * @param white
+     * @param black
+     * @return
+     */
+    public static String drawReason(gameState white, gameState black) {
+        gameState state = (white != gameState.PLAYING) ? white : black;
+        return switch (state) {
+            case THREEFOLD -> "Threefold repetition.";
+            case FIFTY_MOVE -> "Fifty-move rule.";
+            case INSUFFICIENT_MATERIAL -> "Insufficient material.";
+            default -> "";
+        };
+    }
+
     private void processInput(String input, pieceColour side) {
         movesPlayer = board.getLegalMoves(side);
         // Hard code castling
@@ -171,8 +190,8 @@ public class Game {
 
             char endFile = input.charAt(3); // e
             int endRank = Character.getNumericValue(input.charAt(4)); // 4
-            Coordinates initCoords = new Coordinates(startRank, startFile);
-            Coordinates finalCoords = new Coordinates(endRank, endFile);
+            Coordinates initCoords = Coordinates.of(startRank, startFile);
+            Coordinates finalCoords = Coordinates.of(endRank, endFile);
             Piece p = board.getPiece(initCoords);
             boolean playerSide = true;
             if (side == pieceColour.BLACK) {
@@ -183,10 +202,14 @@ public class Game {
                 return;
             }
             Move move = new Move(p, initCoords, finalCoords);
+            // Typed moves always promote to a queen
+            if (p.getType() == pieceType.PAWN && (finalCoords.getRank() == 8 || finalCoords.getRank() == 1)) {
+                move.setPromotionType(pieceType.QUEEN);
+            }
 
             // Set is en passant HERE
             if (!board.history.isEmpty()) {
-                Move last = board.history.peek();
+                Move last = board.getLastMove();
                 if (last.piece.getType() == pieceType.PAWN
                         && Math.abs(last.getMoveFrom().getRow() - last.getMoveTo().getCol()) == 2) {
                     int passingRow = last.to.getRow();
@@ -222,13 +245,13 @@ public class Game {
 
     private void handleCastling(String type) {
         int rank = isWhiteTurn ? 1 : 8; // White is Rank 1, Black is Rank 8
-        Coordinates start = new Coordinates(rank, 'e');
+        Coordinates start = Coordinates.of(rank, 'e');
         Coordinates end;
 
         if (type.equals("O-O")) {
-            end = new Coordinates(rank, 'g'); // Kingside
+            end = Coordinates.of(rank, 'g'); // Kingside
         } else {
-            end = new Coordinates(rank, 'c'); // Queenside
+            end = Coordinates.of(rank, 'c'); // Queenside
         }
 
         Piece test = board.getPiece(start);
@@ -272,7 +295,7 @@ public class Game {
     //         return;
     //     }
 
-    //     Coordinates clickedCoords = new Coordinates(8 - gridRow, (char) ('a' + gridCol));
+    //     Coordinates clickedCoords = Coordinates.of(8 - gridRow, (char) ('a' + gridCol));
     //     Piece clickedPiece = board.getPiece(clickedCoords);
     //     pieceColour currentTurnColour = isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK;
 
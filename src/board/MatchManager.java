@@ -26,8 +26,8 @@ public class MatchManager {
         boolean tricky1 = false;
         boolean tricky2 = false;
         BufferedReader keyboard = new BufferedReader(new InputStreamReader(System.in));
-        String gameStateWhite = board.getGameState(pieceColour.WHITE);
-        String gameStateBlack = board.getGameState(pieceColour.BLACK);
+        gameState gameStateWhite = board.getGameState(pieceColour.WHITE);
+        gameState gameStateBlack = board.getGameState(pieceColour.BLACK);
 
         try {
             System.out.println("BOT MATCH CONFIG");
@@ -71,31 +71,35 @@ public class MatchManager {
                 gameStateWhite = board.getGameState(pieceColour.WHITE);
                 gameStateBlack = board.getGameState(pieceColour.BLACK);
                 
-                while (gameStateWhite.equals("PLAYING") && gameStateBlack.equals("PLAYING")) {
+                while (gameStateWhite == gameState.PLAYING && gameStateBlack == gameState.PLAYING) {
                     board.printBoard(pieceColour.WHITE);
                     handleAI1move(depth1, tricky1);
                     gameStateBlack = board.getGameState(pieceColour.BLACK);
-                    if (!gameStateBlack.equals("PLAYING")){
+                    if (gameStateBlack != gameState.PLAYING){
                         continue;
                     }
                     board.printBoard(pieceColour.WHITE);
                     handleAI2move(depth2, tricky2);
                     gameStateWhite = board.getGameState(pieceColour.WHITE);
-                    if (!gameStateWhite.equals("PLAYING")){
+                    if (gameStateWhite != gameState.PLAYING){
                         continue;
                     }
                 }
                 board.printBoard(pieceColour.WHITE);
-                if (gameStateWhite.equals("CHECKMATE")) {
+                if (gameStateWhite == gameState.CHECKMATE) {
                     System.out.println("Black wins by checkmate! ");
                     score2 ++;
-                } else if (gameStateBlack.equals("CHECKMATE")) {
+                } else if (gameStateBlack == gameState.CHECKMATE) {
                     System.out.println("White wins by checkmate! ");
                     score1 ++;
-                } else if (gameStateBlack.equals("STALEMATE") || gameStateWhite.equals("STALEMATE")) {
+                } else if (gameStateBlack == gameState.STALEMATE || gameStateWhite == gameState.STALEMATE) {
                     System.out.println("Draw by stalemate! ");
                     score1 += 0.5;
                     score2 += 0.5;
+                } else {
+                    System.out.println("Draw! " + Game.drawReason(gameStateWhite, gameStateBlack));
+                    score1 += 0.5;
+                    score2 += 0.5;
                 }
                 matchesRemaining --;
                 
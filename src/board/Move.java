@@ -3,6 +3,7 @@
 
 package board;
 
+import enums.pieceType;
 import pieces.Piece;
 import java.util.Objects;
 
@@ -20,6 +21,7 @@ public class Move {
     private boolean isPromotion;
     private boolean wasFirstMove;
     private Piece promotedPiece;
+    private pieceType promotionType; // Chosen by the generator, null means queen
     private long zobHash;
 
     // Memory
@@ -99,6 +101,14 @@ public class Move {
         promotedPiece = p;
     }
 
+    public pieceType getPromotionType(){
+        return promotionType;
+    }
+
+    public void setPromotionType(pieceType t){
+        promotionType = t;
+    }
+
     public long getZob(){
         return zobHash;
     }
@@ -124,12 +134,13 @@ public class Move {
         Move move = (Move) m;
         return (move.piece.getType() == this.piece.getType()
                 && move.getMoveFrom().getIndex() == this.getMoveFrom().getIndex()
-                && move.getMoveTo().getIndex() == this.getMoveTo().getIndex());
+                && move.getMoveTo().getIndex() == this.getMoveTo().getIndex()
+                && move.promotionType == this.promotionType);
     }
 
     @Override
     public int hashCode(){
-        return Objects.hash(piece.getType(), from.getIndex(), to.getIndex());
+        return Objects.hash(piece.getType(), from.getIndex(), to.getIndex(), promotionType);
     }
 
     public void setPieceWasMovedBefore(boolean val) {
@@ -142,7 +153,15 @@ public class Move {
 
     @Override
     public String toString() {
-        return piece.getSymbol() + ": " + from + " to " + to;
-        
+        String promotion = "";
+        if (promotionType != null) {
+            promotion = switch (promotionType) {
+                case KNIGHT -> "=N";
+                case BISHOP -> "=B";
+                case ROOK -> "=R";
+                default -> "=Q";
+            };
+        }
+        return piece.getSymbol() + ": " + from + " to " + to + promotion;
     }
 }
@@ -0,0 +1,104 @@
+package board;
+
+import enums.pieceType;
+
+/**
+ * Packs a move into a single int so the search can keep moves in primitive
+ * arrays instead of allocating Move objects at every node.
+ *
+ * Layout (low bit first):
+ * bits 0-5 from square, 6-11 to square (0-63, same as Coordinates.getIndex()),
+ * 12-14 moving piece type, 15-17 captured type + 1 (0 = none),
+ * 18-20 promotion type + 1 (0 = none), 21-23 flags.
+ *
+ * 0 is never a real move (from == to), so it doubles as "no move".
+ */
+public final class MoveCode {
+
+    public static final int none = 0;
+
+    public static final int flagEnPassant = 1;
+    public static final int flagCastling = 2;
+    public static final int flagDoublePush = 4;
+
+    // Cached because pieceType.values() clones the array on every call
+    private static final pieceType[] types = pieceType.values();
+
+    private MoveCode() {
+    }
+
+    /**
+     * @param captured  null for quiet moves
+     * @param promotion null unless a pawn reaches the last rank
+     */
+    public static int encode(int from, int to, pieceType piece, pieceType captured, pieceType promotion, int flags) {
+        return from
+                | (to << 6)
+                | (piece.ordinal() << 12)
+                | ((captured == null ? 0 : captured.ordinal() + 1) << 15)
+                | ((promotion == null ? 0 : promotion.ordinal() + 1) << 18)
+                | (flags << 21);
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static pieceType piece(int move) {
+        return types[(move >>> 12) & 0x7];
+    }
+
+    public static pieceType captured(int move) {
+        int c = (move >>> 15) & 0x7;
+        return (c == 0) ? null : types[c - 1];
+    }
+
+    public static pieceType promotion(int move) {
+        int p = (move >>> 18) & 0x7;
+        return (p == 0) ? null : types[p - 1];
+    }
+
+    public static boolean isCapture(int move) {
+        return ((move >>> 15) & 0x7) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return ((move >>> 18) & 0x7) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return ((move >>> 21) & flagEnPassant) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return ((move >>> 21) & flagCastling) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return ((move >>> 21) & flagDoublePush) != 0;
+    }
+
+    /**
+     * Long algebraic form, e.g. e2e4 or e7e8q. For debugging output only.
+     */
+    public static String toString(int move) {
+        if (move == none) {
+            return "none";
+        }
+        String s = Coordinates.of(from(move)).toString() + Coordinates.of(to(move));
+        pieceType promotion = promotion(move);
+        if (promotion != null) {
+            s += switch (promotion) {
+                case KNIGHT -> "n";
+                case BISHOP -> "b";
+                case ROOK -> "r";
+                default -> "q";
+            };
+        }
+        return s;
+    }
+}
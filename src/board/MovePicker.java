@@ -0,0 +1,252 @@
+package board;
+
+import enums.pieceColour;
+
+/**
+ * Hands out the moves of one node best-first, generating them in stages so
+ * that a node which cuts off early never pays for the rest:
+ * the hash move (checked for legality, nothing generated), then captures that
+ * don't lose material (by static exchange) and promotions by MVV-LVA, then the
+ * two killer moves and the counter move, then the remaining quiet moves by
+ * history score, and last the losing captures. Quiescence search uses the
+ * winning capture stage only.
+ *
+ * Within a stage the next move is picked by a selection scan, so only the
+ * moves actually searched are ever ordered. One picker is kept per ply and
+ * reset for every node.
+ */
+public class MovePicker {
+
+    private static final int stageTT = 0;
+    private static final int stageGenCaptures = 1;
+    private static final int stageCaptures = 2;
+    private static final int stageKiller1 = 3;
+    private static final int stageKiller2 = 4;
+    private static final int stageCounter = 5;
+    private static final int stageGenQuiets = 6;
+    private static final int stageQuiets = 7;
+    private static final int stageBadCaptures = 8;
+    private static final int stageDone = 9;
+
+    // Added to every capture that doesn't lose material, so losing ones
+    // (scored by their negative exchange value) sort after them
+    private static final int goodCapture = 100000;
+
+    private final int[] moves = new int[256];
+    private final int[] scores = new int[256];
+    private final int[] badCaptures = new int[256];
+    private int count;
+    private int index;
+    private int badCount;
+    private int badIndex;
+    private int stage;
+
+    private Board board;
+    private pieceColour colour;
+    private int ttMove;
+    private int killer1;
+    private int killer2;
+    private int counterMove;
+    private int[] history; // Side to move's quiet history, indexed by from * 64 + to
+    private boolean noisyOnly;
+
+    /**
+     * Starts a new node.
+     *
+     * @param board
+     * @param colour  Side to move
+     * @param ttMove  MoveCode.none if there is no hash move
+     * @param killer1 MoveCode.none if there is no killer
+     * @param killer2
+     * @param counterMove MoveCode.none if there is no counter move
+     * @param history     Quiet move scores for colour, indexed by from * 64 + to
+     */
+    public void reset(Board board, pieceColour colour, int ttMove, int killer1, int killer2, int counterMove,
+            int[] history) {
+        this.board = board;
+        this.colour = colour;
+        this.ttMove = ttMove;
+        this.killer1 = killer1;
+        this.killer2 = killer2;
+        this.counterMove = counterMove;
+        this.history = history;
+        this.noisyOnly = false;
+        this.stage = stageTT;
+    }
+
+    /**
+     * Starts a quiescence node: captures and promotions only, no hash move.
+     *
+     * @param board
+     * @param colour Side to move
+     */
+    public void resetNoisy(Board board, pieceColour colour) {
+        this.board = board;
+        this.colour = colour;
+        this.ttMove = MoveCode.none;
+        this.killer1 = MoveCode.none;
+        this.killer2 = MoveCode.none;
+        this.counterMove = MoveCode.none;
+        this.noisyOnly = true;
+        this.stage = stageGenCaptures;
+    }
+
+    /**
+     * @return The next move to search, or MoveCode.none when there are no more
+     */
+    @SuppressWarnings("fallthrough") // Each stage falls through to the next once it runs dry
+    public int next() {
+        switch (stage) {
+            case stageTT:
+                stage = stageGenCaptures;
+                if (board.isLegal(ttMove, colour)) {
+                    return ttMove;
+                }
+                // Fall through
+            case stageGenCaptures:
+                count = board.generateNoisy(colour, moves, 0);
+                badCount = 0;
+                badIndex = 0;
+                for (int i = 0; i < count; i++) {
+                    scores[i] = scoreNoisy(moves[i]);
+                }
+                index = 0;
+                stage = stageCaptures;
+                // Fall through
+            case stageCaptures:
+                while (index < count) {
+                    int m = pickBest();
+                    if (scores[index - 1] < 0) {
+                        // Only losing captures left: keep them for the end
+                        for (int i = index - 1; i < count; i++) {
+                            badCaptures[badCount++] = moves[i];
+                        }
+                        index = count;
+                        break;
+                    }
+                    if (m != ttMove) {
+                        return m;
+                    }
+                }
+                if (noisyOnly) {
+                    stage = stageDone;
+                    return MoveCode.none;
+                }
+                stage = stageKiller1;
+                // Fall through
+            case stageKiller1:
+                stage = stageKiller2;
+                if (killer1 != ttMove && isQuiet(killer1) && board.isLegal(killer1, colour)) {
+                    return killer1;
+                }
+                // Fall through
+            case stageKiller2:
+                stage = stageCounter;
+                if (killer2 != ttMove && killer2 != killer1 && isQuiet(killer2) && board.isLegal(killer2, colour)) {
+                    return killer2;
+                }
+                // Fall through
+            case stageCounter:
+                stage = stageGenQuiets;
+                if (counterMove != ttMove && counterMove != killer1 && counterMove != killer2 && isQuiet(counterMove)
+                        && board.isLegal(counterMove, colour)) {
+                    return counterMove;
+                }
+                // Fall through
+            case stageGenQuiets:
+                count = board.generateQuiets(colour, moves, 0);
+                for (int i = 0; i < count; i++) {
+                    scores[i] = history[historyIndex(moves[i])];
+                }
+                index = 0;
+                stage = stageQuiets;
+                // Fall through
+            case stageQuiets:
+                while (index < count) {
+                    int m = pickBest();
+                    if (m != ttMove && m != killer1 && m != killer2 && m != counterMove) {
+                        return m;
+                    }
+                }
+                stage = stageBadCaptures;
+                // Fall through
+            case stageBadCaptures:
+                while (badIndex < badCount) {
+                    int m = badCaptures[badIndex++];
+                    if (m != ttMove) {
+                        return m;
+                    }
+                }
+                stage = stageDone;
+                // Fall through
+            default:
+                return MoveCode.none;
+        }
+    }
+
+    /**
+     * @return Whether the last move handed out was a capture that loses
+     *         material by static exchange
+     */
+    public boolean isBadCapture() {
+        return stage == stageBadCaptures;
+    }
+
+    /**
+     * Whether a move belongs to the quiet stage, i.e. is neither a capture nor
+     * a promotion.
+     *
+     * @param move
+     * @return
+     */
+    public static boolean isQuiet(int move) {
+        return !MoveCode.isCapture(move) && !MoveCode.isPromotion(move);
+    }
+
+    /**
+     * @param move
+     * @return Index of a move in the history and counter move tables
+     */
+    public static int historyIndex(int move) {
+        return MoveCode.from(move) * 64 + MoveCode.to(move);
+    }
+
+    // MVV-LVA above goodCapture, or the exchange value if the capture loses material
+    private int scoreNoisy(int m) {
+        int score = goodCapture;
+        if (MoveCode.isCapture(m)) {
+            int victim = Board.pieceValues[MoveCode.captured(m).ordinal()];
+            int attacker = Board.pieceValues[MoveCode.piece(m).ordinal()];
+            // Taking something worth at least the capturer can't lose material
+            if (victim < attacker && !MoveCode.isPromotion(m)) {
+                int see = board.see(m);
+                if (see < 0) {
+                    return see;
+                }
+            }
+            score += victim * 10 - attacker;
+        }
+        if (MoveCode.isPromotion(m)) {
+            score += 8000;
+        }
+        return score;
+    }
+
+    // Swaps the best remaining move to the front of the unsearched part and takes it
+    private int pickBest() {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int m = moves[best];
+        int score = scores[best];
+        moves[best] = moves[index];
+        scores[best] = scores[index];
+        moves[index] = m;
+        scores[index] = score;
+        index++;
+        return m;
+    }
+}
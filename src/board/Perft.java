@@ -0,0 +1,401 @@
+package board;
+
+import enums.pieceColour;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth ("perft").
+ * Used to benchmark the move generator and check it against known counts.
+ * Any change to move generation or make/unmake should pass the suite first.
+ *
+ * Usage:
+ * java board.Perft "<fen>" <depth> [divide] [hash] [parallel]
+ * java board.Perft suite [hash]
+ * java board.Perft epd <file> [maxDepth] [hash]
+ *
+ * divide prints the node count under each root move, which is the quickest
+ * way to find a wrong move by comparing against another engine. hash checks
+ * the incrementally updated zobristHash against a from-scratch hash at every
+ * node (slow). parallel splits the tree over every core, see parallelPerft.
+ * epd runs a perft file in the usual format, where each line carries its
+ * expected counts as D1, D2, ... operations.
+ */
+public class Perft {
+
+    public static final String startFen = Fen.startPosition;
+
+    // FEN, depth, known node count. Positions from the Chess Programming Wiki
+    // perft results page, chosen to cover castling, en passant, promotions and
+    // discovered checks.
+    private static final Object[][] suite = {
+            { startFen, 5, 4865609L },
+            { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4, 4085603L },
+            { "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674624L },
+            { "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 4, 422333L },
+            { "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 3, 62379L },
+            { "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 3, 89890L },
+    };
+
+    // Subtrees deeper than this are split into further tasks
+    private static final int splitDepth = 4;
+    private static final int tableBits = 22; // 4M entries, 64 MB
+
+    public static long perft(Board board, int depth, boolean isWhiteTurn) {
+        return perft(board, depth, isWhiteTurn, false);
+    }
+
+    /**
+     * @param checkHash Compare zobristHash against Board.computeZobrist after
+     *                  every move, throwing IllegalStateException on a mismatch
+     */
+    public static long perft(Board board, int depth, boolean isWhiteTurn, boolean checkHash) {
+        if (depth <= 0) {
+            return 1;
+        }
+        return perft(board, depth, isWhiteTurn, checkHash, new int[depth][256]);
+    }
+
+    /**
+     * Perft that prints the node count under each root move.
+     */
+    public static long divide(Board board, int depth, boolean isWhiteTurn, boolean checkHash) {
+        if (depth <= 0) {
+            return 1;
+        }
+        int[][] buffers = new int[depth][256];
+        int[] moves = buffers[depth - 1];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            if (checkHash) {
+                checkHash(board, moves[i], !isWhiteTurn);
+            }
+            long subtree = (depth == 1) ? 1 : perft(board, depth - 1, !isWhiteTurn, checkHash, buffers);
+            board.unmakeMove();
+            System.out.println(MoveCode.toString(moves[i]) + ": " + subtree);
+            nodes += subtree;
+        }
+        return nodes;
+    }
+
+    // One move buffer per remaining depth, so the walk allocates nothing
+    private static long perft(Board board, int depth, boolean isWhiteTurn, boolean checkHash, int[][] buffers) {
+        int[] moves = buffers[depth - 1];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+        if (depth == 1 && !checkHash) {
+            return count; // Bulk count the last ply
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            if (checkHash) {
+                checkHash(board, moves[i], !isWhiteTurn);
+            }
+            nodes += (depth == 1) ? 1 : perft(board, depth - 1, !isWhiteTurn, checkHash, buffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Perft split over a fork/join pool. Each root move, and each deeper
+     * subtree above splitDepth, becomes a task that owns its own Board.copy().
+     * The tasks share one perft hash table, so transpositions reached by
+     * different workers are only counted once.
+     *
+     * @param threads Worker count, e.g. Runtime.availableProcessors()
+     * @param divide  Print the node count under each root move
+     */
+    public static long parallelPerft(Board board, int depth, boolean isWhiteTurn, int threads, boolean divide) {
+        if (depth <= 1) {
+            return divide ? divide(board, depth, isWhiteTurn, false) : perft(board, depth, isWhiteTurn);
+        }
+        int[] moves = new int[256];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+        Table table = new Table(tableBits);
+
+        // Copies are made here, before any worker touches them
+        List<Subtree> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Subtree(board.copy(), moves[i], depth - 1, !isWhiteTurn, table));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            long subtree = tasks.get(i).join();
+            if (divide) {
+                System.out.println(MoveCode.toString(moves[i]) + ": " + subtree);
+            }
+            nodes += subtree;
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the nodes under one move on a board no other task uses.
+     */
+    private static final class Subtree extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final int move;
+        private final int depth;
+        private final boolean isWhiteTurn;
+        private final Table table;
+
+        Subtree(Board board, int move, int depth, boolean isWhiteTurn, Table table) {
+            this.board = board;
+            this.move = move;
+            this.depth = depth;
+            this.isWhiteTurn = isWhiteTurn;
+            this.table = table;
+        }
+
+        @Override
+        protected Long compute() {
+            board.makeMove(move);
+            if (depth <= splitDepth) {
+                return perft(board, depth, isWhiteTurn, table, new int[depth][256]);
+            }
+
+            int[] moves = new int[256];
+            int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+            List<Subtree> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                children.add(new Subtree(board.copy(), moves[i], depth - 1, !isWhiteTurn, table));
+            }
+            long nodes = 0;
+            for (Subtree child : invokeAll(children)) {
+                nodes += child.join();
+            }
+            return nodes;
+        }
+    }
+
+    // Sequential perft that shares subtree counts through the table
+    private static long perft(Board board, int depth, boolean isWhiteTurn, Table table, int[][] buffers) {
+        if (depth >= 2) {
+            long cached = table.get(board.zobristHash, depth);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
+        int[] moves = buffers[depth - 1];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+        if (depth == 1) {
+            return count; // Bulk count the last ply
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            nodes += perft(board, depth - 1, !isWhiteTurn, table, buffers);
+            board.unmakeMove();
+        }
+        table.put(board.zobristHash, depth, nodes);
+        return nodes;
+    }
+
+    /**
+     * Lock-free perft hash table shared between worker threads. Each entry is
+     * stored as (key ^ data, data), so an entry torn by two threads writing at
+     * once no longer matches its key and simply reads as a miss.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final long[] data; // Node count << 8 | depth
+        private final int mask;
+
+        Table(int bits) {
+            keys = new long[1 << bits];
+            data = new long[1 << bits];
+            mask = (1 << bits) - 1;
+        }
+
+        long get(long hash, int depth) {
+            int i = (int) hash & mask;
+            long d = data[i];
+            if ((keys[i] ^ d) == hash && (d & 0xFF) == depth) {
+                return d >>> 8;
+            }
+            return -1;
+        }
+
+        void put(long hash, int depth, long nodes) {
+            int i = (int) hash & mask;
+            long d = (nodes << 8) | depth;
+            data[i] = d;
+            keys[i] = hash ^ d;
+        }
+    }
+
+    private static void checkHash(Board board, int move, boolean isWhiteTurn) {
+        long expected = board.computeZobrist(isWhiteTurn);
+        if (board.zobristHash != expected) {
+            throw new IllegalStateException("Zobrist mismatch after " + MoveCode.toString(move) + ": expected "
+                    + Long.toHexString(expected) + ", got " + Long.toHexString(board.zobristHash));
+        }
+    }
+
+    /**
+     * Sets up a board from a FEN the way the game does.
+     *
+     * @param fen
+     * @return
+     */
+    public static Board load(String fen) {
+        Board board = new Board();
+        board.initialise(fen);
+        return board;
+    }
+
+    /**
+     * Runs every suite position and reports mismatches.
+     *
+     * @param checkHash
+     * @return True if every count matched
+     */
+    public static boolean runSuite(boolean checkHash) {
+        boolean passed = true;
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (Object[] test : suite) {
+            String fen = (String) test[0];
+            int depth = (Integer) test[1];
+            long expected = (Long) test[2];
+
+            Board board = load(fen);
+            long nodes = perft(board, depth, board.isWhiteToMove(), checkHash);
+            totalNodes += nodes;
+            boolean ok = (nodes == expected);
+            passed &= ok;
+            System.out.println((ok ? "OK   " : "FAIL ") + "depth " + depth + " nodes " + nodes
+                    + (ok ? "" : " (expected " + expected + ")") + "  " + fen);
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println("Nodes: " + totalNodes);
+        System.out.println("Time:  " + elapsedMs + " ms");
+        System.out.println("NPS:   " + (totalNodes * 1000 / elapsedMs));
+        System.out.println(passed ? "Suite passed." : "Suite FAILED.");
+        return passed;
+    }
+
+    /**
+     * Runs every position of a perft EPD file against its D1, D2, ...
+     * operations, up to maxDepth.
+     *
+     * @param path
+     * @param maxDepth
+     * @param checkHash
+     * @return True if every count matched
+     * @throws IOException
+     */
+    public static boolean runEpd(Path path, int maxDepth, boolean checkHash) throws IOException {
+        boolean passed = true;
+        long totalNodes = 0;
+        int positions = 0;
+        long start = System.nanoTime();
+        Board board = new Board();
+        try (EpdReader epd = EpdReader.open(path)) {
+            while (epd.next()) {
+                board.setPosition(epd.getPosition());
+                positions++;
+                for (int depth = 1; depth <= maxDepth; depth++) {
+                    String expected = epd.get("D" + depth);
+                    if (expected == null) {
+                        continue;
+                    }
+                    long nodes = perft(board, depth, board.isWhiteToMove(), checkHash);
+                    totalNodes += nodes;
+                    if (nodes != Long.parseLong(expected)) {
+                        passed = false;
+                        System.out.println("FAIL line " + epd.getLineNumber() + " depth " + depth + " nodes " + nodes
+                                + " (expected " + expected + ")  " + board.toFen());
+                    }
+                }
+            }
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println("Positions: " + positions);
+        System.out.println("Nodes: " + totalNodes);
+        System.out.println("Time:  " + elapsedMs + " ms");
+        System.out.println("NPS:   " + (totalNodes * 1000 / elapsedMs));
+        System.out.println(passed ? "EPD passed." : "EPD FAILED.");
+        return passed;
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("suite")) {
+            boolean checkHash = args.length > 1 && args[1].equals("hash");
+            if (!runSuite(checkHash)) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("epd")) {
+            int maxDepth = (args.length > 2 && !args[2].equals("hash")) ? Integer.parseInt(args[2]) : 5;
+            boolean checkHash = args[args.length - 1].equals("hash");
+            try {
+                if (!runEpd(Path.of(args[1]), maxDepth, checkHash)) {
+                    System.exit(1);
+                }
+            } catch (IOException e) {
+                System.out.println("Could not read " + args[1] + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        boolean divide = false;
+        boolean checkHash = false;
+        boolean parallel = false;
+        for (int i = 2; i < args.length; i++) {
+            divide |= args[i].equals("divide");
+            checkHash |= args[i].equals("hash");
+            parallel |= args[i].equals("parallel");
+        }
+
+        String fen = (args.length > 0) ? args[0] : startFen;
+        int depth = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        Board board = load(fen);
+        boolean isWhiteTurn = board.isWhiteToMove();
+
+        long start = System.nanoTime();
+        long nodes;
+        if (parallel && !checkHash) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            System.out.println("Threads: " + threads);
+            nodes = parallelPerft(board, depth, isWhiteTurn, threads, divide);
+        } else {
+            nodes = divide ? divide(board, depth, isWhiteTurn, checkHash) : perft(board, depth, isWhiteTurn, checkHash);
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+        System.out.println("Depth: " + depth);
+        System.out.println("Nodes: " + nodes);
+        System.out.println("Time:  " + elapsedMs + " ms");
+        System.out.println("NPS:   " + (nodes * 1000 / elapsedMs));
+    }
+}
@@ -0,0 +1,220 @@
+package board;
+
+import enums.pieceColour;
+import enums.pieceType;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of a position: eight bitboards plus castling rights, en
+ * passant square, side to move and clocks. Unlike Board it holds no Piece
+ * objects or display state, so it can be handed to other threads, stored in
+ * caches or kept in bulk without copying anything.
+ *
+ * Squares use the same 0-63 index as Coordinates.getIndex().
+ */
+public final class Position {
+
+    // Castling bits, same layout as Board.getCastlingMask()
+    public static final int whiteKingside = 1;
+    public static final int whiteQueenside = 2;
+    public static final int blackKingside = 4;
+    public static final int blackQueenside = 8;
+
+    // Cached because pieceType.values() clones the array on every call
+    private static final pieceType[] pieceTypes = pieceType.values();
+
+    private final long[] colours; // Indexed by pieceColour ordinal
+    private final long[] types; // Indexed by pieceType ordinal
+    private final int castling;
+    private final int enPassant; // Square behind a pawn that just double pushed, or -1
+    private final boolean whiteToMove;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+    private final long hash;
+
+    private Position(long[] colours, long[] types, int castling, int enPassant, boolean whiteToMove,
+            int halfmoveClock, int fullmoveNumber, long hash) {
+        this.colours = colours;
+        this.types = types;
+        this.castling = castling;
+        this.enPassant = enPassant;
+        this.whiteToMove = whiteToMove;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+        this.hash = hash;
+    }
+
+    /**
+     * Snapshot of a board, with the board's own side to move.
+     *
+     * @param board
+     * @return
+     */
+    public static Position of(Board board) {
+        return of(board, board.isWhiteToMove());
+    }
+
+    /**
+     * Snapshot of a board with the side to move given by the caller, for code
+     * that keeps track of the turn itself.
+     *
+     * @param board
+     * @param whiteToMove
+     * @return
+     */
+    public static Position of(Board board, boolean whiteToMove) {
+        long[] colours = new long[2];
+        long[] types = new long[6];
+        for (pieceColour c : pieceColour.values()) {
+            colours[c.ordinal()] = board.getColourBitboard(c);
+        }
+        for (pieceType t : pieceType.values()) {
+            types[t.ordinal()] = board.getTypeBitboard(t);
+        }
+        // Set after any double push, capturable or not, matching the board's hash
+        int enPassant = board.getEnPassantSquare();
+        return new Position(colours, types, board.getCastlingMask(), enPassant, whiteToMove,
+                board.halfmoveClock(), board.getFullmoveNumber(), board.zobristHash);
+    }
+
+    /**
+     * Builds a position from its parts (e.g. while parsing a FEN) and works
+     * out its Zobrist hash, the same way Board.computeZobrist does.
+     */
+    static Position create(long[] colours, long[] types, int castling, int enPassant, boolean whiteToMove,
+            int halfmoveClock, int fullmoveNumber) {
+        long hash = 0;
+        for (int c = 0; c < colours.length; c++) {
+            for (int t = 0; t < types.length; t++) {
+                long pieces = colours[c] & types[t];
+                while (pieces != 0) {
+                    hash ^= Zobrist.pieces[c][t][Long.numberOfTrailingZeros(pieces)];
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+        if (!whiteToMove) {
+            hash ^= Zobrist.turn;
+        }
+        if (enPassant >= 0) {
+            hash ^= Zobrist.passantFiles[enPassant % 8];
+        }
+        hash ^= Zobrist.castlingRights[castling];
+        return new Position(colours, types, castling, enPassant, whiteToMove, halfmoveClock, fullmoveNumber, hash);
+    }
+
+    /**
+     * @param fen
+     * @return
+     * @throws IllegalArgumentException if fen is malformed
+     */
+    public static Position fromFen(String fen) {
+        return Fen.parse(fen);
+    }
+
+    public String toFen() {
+        return Fen.format(this);
+    }
+
+    /**
+     * Builds a fresh Board holding this position.
+     *
+     * @return
+     */
+    public Board toBoard() {
+        Board board = new Board();
+        board.setPosition(this);
+        return board;
+    }
+
+    public long getColourBitboard(pieceColour colour) {
+        return colours[colour.ordinal()];
+    }
+
+    public long getTypeBitboard(pieceType type) {
+        return types[type.ordinal()];
+    }
+
+    /**
+     * @param sq
+     * @return The type of the piece on sq, or null if it is empty
+     */
+    public pieceType getType(int sq) {
+        long bit = 1L << sq;
+        for (int t = 0; t < types.length; t++) {
+            if ((types[t] & bit) != 0) {
+                return pieceTypes[t];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param sq
+     * @return The colour of the piece on sq, or null if it is empty
+     */
+    public pieceColour getColour(int sq) {
+        long bit = 1L << sq;
+        if ((colours[0] & bit) != 0) {
+            return pieceColour.WHITE;
+        }
+        return ((colours[1] & bit) != 0) ? pieceColour.BLACK : null;
+    }
+
+    public int getCastling() {
+        return castling;
+    }
+
+    public int getEnPassant() {
+        return enPassant;
+    }
+
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Zobrist hash of the board this was taken from.
+     *
+     * @return
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        Position p = (Position) o;
+        // Clocks are left out: they do not change what can happen next
+        return castling == p.castling && enPassant == p.enPassant && whiteToMove == p.whiteToMove
+                && Arrays.equals(colours, p.colours) && Arrays.equals(types, p.types);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 31 * Arrays.hashCode(colours) + Arrays.hashCode(types);
+        h = 31 * h + castling;
+        h = 31 * h + enPassant;
+        return 31 * h + (whiteToMove ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+}
@@ -1,273 +1,653 @@
 package board;
 
 import enums.pieceColour;
-import enums.pieceType;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.*;
+import java.util.Arrays;
 
 public class Search {
 
-    private static Map<pieceType, Integer> materialValues = new EnumMap<>(pieceType.class);
-    static {
-        materialValues.put(pieceType.PAWN, 100);
-        materialValues.put(pieceType.KNIGHT, 300);
-        materialValues.put(pieceType.BISHOP, 300);
-        materialValues.put(pieceType.ROOK, 500);
-        materialValues.put(pieceType.QUEEN, 900);
-        materialValues.put(pieceType.KING, 20000);
-    }
-
     private Eval evaluator = new Eval();
     private static final int inf = 1000000;
     private static final int checkmate = 900000;
-    // Divisor 56 to account for Java object overhead
-    public final TranspositionTable tTable = new TranspositionTable(516);
+    private static final int maxPly = 128;
+    private static final int defaultTableMegabytes = 128;
+    // Aspiration windows: first half-width around the last iteration's score
+    // (wide, as the eval swings between odd and even depths), and the
+    // shallowest depth that uses one
+    private static final int aspirationWindow = 150;
+    private static final int aspirationDepth = 2;
+    // Null-move pruning: shallowest depth it is tried at, and the depth from
+    // which a null-move cutoff is double-checked by a normal reduced search
+    private static final int nullMoveDepth = 3;
+    private static final int nullVerifyDepth = 7;
+    // Frontier pruning margins, indexed by remaining depth
+    private static final int[] futilityMargins = { 0, 200, 450 };
+    private static final int[] razorMargins = { 0, 300, 550 };
+    private static final int reverseFutilityMargin = 120; // Per ply of depth
+    private static final int reverseFutilityDepth = 3;
+    // Moves that lose more than this per ply of depth by static exchange are
+    // skipped near the leaves
+    private static final int seePruningMargin = 100;
+    private static final int seePruningDepth = 3;
+    // Quiescence captures that leave the score this far short of alpha even
+    // after winning the victim are skipped
+    private static final int deltaMargin = 200;
+    // Late move reductions: first move index that may be reduced, and the
+    // reduction for each depth and move index (grows with the log of both)
+    private static final int lmrMoveIndex = 3;
+    private static final int lmrDepth = 3;
+    private static final int[][] lmrReductions = new int[64][64];
+
+    static {
+        for (int depth = 1; depth < 64; depth++) {
+            for (int move = 1; move < 64; move++) {
+                lmrReductions[depth][move] = (int) (0.75 + Math.log(depth) * Math.log(move) / 2.25);
+            }
+        }
+    }
+
+    // Switches for the selective search, so each one's effect can be measured
+    // on its own (see Bench)
+    public boolean useNullMove = true;
+    public boolean useLateMoveReductions = true;
+    public boolean useFutilityPruning = true;
+    public boolean useReverseFutility = true;
+    public boolean useRazoring = true;
+    public boolean useSeePruning = true;
+    public boolean useDeltaPruning = true;
+    // Off: on the bench it saves a few percent of nodes but no time
+    public boolean useQuiescenceTT = false;
+    // Shared with the helper threads
+    public final TranspositionTable tTable;
+
+    // One move picker per ply, reused for the whole search so no node allocates
+    private final MovePicker[] pickers = new MovePicker[maxPly];
+    // Two quiet moves per ply that recently caused a beta cutoff
+    private final int[][] killers = new int[maxPly][2];
+    // Quiet move ordering that outlives a single node, indexed by
+    // MovePicker.historyIndex: how often a move caused a cutoff for each side,
+    // and the quiet move that last refuted each previous move
+    private static final int maxHistory = 16384;
+    private final int[][] history = new int[2][64 * 64];
+    private final int[] counterMoves = new int[64 * 64];
+    // Quiet moves searched so far at each ply, to penalise once one cuts off
+    private final int[][] quietsSearched = new int[maxPly][256];
+    private long nodes; // Nodes visited by the last findBestMove, quiescence included
+    private long helperNodes; // The same for the helper threads
+    private long limitMs = 3000; // Stop deepening once a search has taken this long
+    private boolean timeUp;
+
+    // Lazy SMP: helper searches run the same iterative deepening on their own
+    // copies of the board, and help only through the shared table
+    private Search[] helpers = new Search[0];
+    private volatile boolean stopped; // Set on a helper when the main search is done
+
+    public Search() {
+        this(defaultTableMegabytes);
+    }
+
+    /**
+     * @param tableMegabytes Size of the transposition table, which is only
+     *                       allocated once the first search starts
+     */
+    public Search(int tableMegabytes) {
+        this(new TranspositionTable(tableMegabytes));
+    }
+
+    private Search(TranspositionTable tTable) {
+        this.tTable = tTable;
+        for (int i = 0; i < maxPly; i++) {
+            pickers[i] = new MovePicker();
+        }
+    }
+
+    /**
+     * How many threads findBestMove searches with, this one included.
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        int count = Math.max(1, threads) - 1;
+        Search[] next = Arrays.copyOf(helpers, count);
+        for (int i = helpers.length; i < count; i++) {
+            next[i] = new Search(tTable);
+            next[i].limitMs = Long.MAX_VALUE; // Helpers stop when told to
+        }
+        helpers = next;
+    }
+
+    public int getThreads() {
+        return helpers.length + 1;
+    }
 
     public Move findBestMove(Board board, int maxDepth, boolean isWhiteTurn, boolean isTricky) {
         pieceColour side = (isWhiteTurn) ? pieceColour.WHITE : pieceColour.BLACK;
-        List<Move> allRootMoves = board.getLegalMoves(side);
+        int[] allRootMoves = new int[256];
+        int rootCount = board.generateLegalMoves(side, allRootMoves, 0);
 
-        // Map to store scores for each move at each depth
-        Map<Move, int[]> historyMoves = new HashMap<>();
-        if (allRootMoves.isEmpty()) {
+        // Scores for each root move at each depth, rows kept in step with allRootMoves
+        if (rootCount == 0) {
             return null;
         }
-        for (Move m : allRootMoves) {
-            historyMoves.put(m, new int[maxDepth + 1]);
-            Arrays.fill(historyMoves.get(m), -inf - 7); // Placeholder for "unsearched"
+        int[][] historyMoves = new int[rootCount][maxDepth + 1];
+        Instant start = Instant.now();
+        prepare();
+        tTable.allocate(); // Before any helper can see it
+
+        Thread[] threads = new Thread[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = helpers[i];
+            Board copy = board.copy();
+            int id = i + 1;
+            helper.copySwitches(this);
+            helper.prepare();
+            threads[i] = new Thread(() -> helper.searchAsHelper(copy, maxDepth, isWhiteTurn, id), "search-" + id);
+            threads[i].setDaemon(true);
+            threads[i].start();
         }
 
-        Instant start = Instant.now();
-        long limitMs = 3000;
-        int lastCompletedDepth = 0;
+        int lastCompletedDepth = iterativeDeepening(board, allRootMoves, historyMoves, rootCount, maxDepth,
+                isWhiteTurn, start, 1, 0);
 
-        // Iterative deepening
-        for (int depth = 1; depth <= maxDepth; depth++) {
-            int alpha = -inf;
-            int beta = inf;
+        helperNodes = 0;
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].stopped = true;
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            helperNodes += helpers[i].nodes;
+        }
 
-            // Sort root moves based on previous depth results for better pruning
-            sortRootMoves(allRootMoves, historyMoves, lastCompletedDepth, isWhiteTurn);
+        return board.toMove((isTricky)
+                ? chooseTrickyMove(historyMoves, allRootMoves, rootCount, lastCompletedDepth, isWhiteTurn)
+                : chooseMove(historyMoves, allRootMoves, rootCount, lastCompletedDepth, isWhiteTurn));
+    }
 
-            for (Move m : allRootMoves) {
-                board.doMove(m);
-                // Start search at ply 1 because we just made a move
-                int score = minimax(board, depth - 1, alpha, beta, !isWhiteTurn, 1);
-                board.undoMove();
+    private void copySwitches(Search from) {
+        useNullMove = from.useNullMove;
+        useLateMoveReductions = from.useLateMoveReductions;
+        useFutilityPruning = from.useFutilityPruning;
+        useReverseFutility = from.useReverseFutility;
+        useRazoring = from.useRazoring;
+        useSeePruning = from.useSeePruning;
+        useDeltaPruning = from.useDeltaPruning;
+        useQuiescenceTT = from.useQuiescenceTT;
+    }
 
-                historyMoves.get(m)[depth] = score;
+    // Clears the per-search state before a findBestMove
+    private void prepare() {
+        for (int[] k : killers) {
+            Arrays.fill(k, MoveCode.none);
+        }
+        // Age the history so the last search informs this one without ruling it
+        for (int[] h : history) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] /= 2;
+            }
+        }
+        nodes = 0;
+        timeUp = false;
+        stopped = false;
+    }
 
-                // Root Alpha-Beta Pruning
-                if (isWhiteTurn) {
-                    alpha = Math.max(alpha, score);
-                } else {
-                    beta = Math.min(beta, score);
-                }
+    /**
+     * A helper thread's whole search: the main loop on its own board copy,
+     * desynchronised from the main thread so the threads don't all search
+     * the same tree. Odd helpers start one depth ahead, and each rotates the
+     * root moves after the first by its id. Runs until stopped or maxDepth.
+     */
+    private void searchAsHelper(Board board, int maxDepth, boolean isWhiteTurn, int id) {
+        int[] moves = new int[256];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
+        int[][] scores = new int[count][maxDepth + 1];
+        iterativeDeepening(board, moves, scores, count, maxDepth, isWhiteTurn, Instant.now(), 1 + id % 2, id);
+    }
+
+    /**
+     * Iterative deepening with aspiration windows, filling history with each
+     * root move's score at each depth.
+     *
+     * @param firstDepth Depth of the first iteration
+     * @param rotation   How far to rotate the root moves after the first
+     *                   before each iteration, 0 for the main thread
+     * @return Deepest depth completed
+     */
+    private int iterativeDeepening(Board board, int[] allRootMoves, int[][] historyMoves, int rootCount,
+            int maxDepth, boolean isWhiteTurn, Instant start, int firstDepth, int rotation) {
+        for (int[] scores : historyMoves) {
+            Arrays.fill(scores, -inf - 7); // Placeholder for "unsearched"
+        }
+        int lastCompletedDepth = 0;
+        int lastScore = 0;
 
-                // Time Check: Exit mid-depth if we are overtime
-                if (Duration.between(start, Instant.now()).toMillis() > limitMs) {
-                    return (isTricky) ? chooseTrickyMove(historyMoves, allRootMoves, lastCompletedDepth, isWhiteTurn)
-                            : chooseMove(historyMoves, allRootMoves, lastCompletedDepth, isWhiteTurn);
+        // Iterative deepening
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            // Sort root moves based on previous depth results for better pruning
+            sortRootMoves(allRootMoves, historyMoves, rootCount, lastCompletedDepth, isWhiteTurn);
+            if (rotation > 0 && rootCount > 2) {
+                rotate(allRootMoves, historyMoves, rootCount, rotation % (rootCount - 1));
+            }
+
+            // Expect about the same score as last time. If the result falls
+            // outside the window, widen that side and search the depth again.
+            int delta = aspirationWindow;
+            boolean aspirate = depth >= aspirationDepth && Math.abs(lastScore) < checkmate - 1000;
+            int alpha = aspirate ? lastScore - delta : -inf;
+            int beta = aspirate ? lastScore + delta : inf;
+            while (true) {
+                int score = searchRoot(board, allRootMoves, historyMoves, rootCount, depth, alpha, beta, isWhiteTurn,
+                        start);
+                if (timeUp) {
+                    return lastCompletedDepth;
+                }
+                if (score <= alpha && alpha > -inf) {
+                    delta *= 2;
+                    alpha = (delta > 1000) ? -inf : Math.max(-inf, score - delta);
+                } else if (score >= beta && beta < inf) {
+                    delta *= 2;
+                    beta = (delta > 1000) ? inf : Math.min(inf, score + delta);
+                } else {
+                    lastScore = score;
+                    break;
                 }
             }
             lastCompletedDepth = depth;
         }
+        return lastCompletedDepth;
+    }
 
-        return (isTricky) ? chooseTrickyMove(historyMoves, allRootMoves, lastCompletedDepth, isWhiteTurn)
-                : chooseMove(historyMoves, allRootMoves, lastCompletedDepth, isWhiteTurn);
+    // Rotates moves[1..count) (and their history rows) left by n
+    private static void rotate(int[] moves, int[][] history, int count, int n) {
+        for (int k = 0; k < n; k++) {
+            int move = moves[1];
+            int[] scores = history[1];
+            System.arraycopy(moves, 2, moves, 1, count - 2);
+            System.arraycopy(history, 2, history, 1, count - 2);
+            moves[count - 1] = move;
+            history[count - 1] = scores;
+        }
     }
 
-    private int minimax(Board board, int depth, int alpha, int beta, boolean isWhiteTurn, int ply) {
+    /**
+     * Searches every root move once inside (alpha, beta), recording each score
+     * in history. Stops at the first move that reaches beta, and sets timeUp
+     * instead of finishing if the time limit passes.
+     *
+     * @return Best score, from the mover's point of view
+     */
+    private int searchRoot(Board board, int[] moves, int[][] history, int count, int depth, int alpha, int beta,
+            boolean isWhiteTurn, Instant start) {
+        // Root scores are from the mover's point of view, history is White's
+        int multiplier = isWhiteTurn ? 1 : -1;
+        int bestScore = -inf;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            // Start search at ply 1 because we just made a move
+            int score = searchMove(board, depth - 1, alpha, beta, !isWhiteTurn, 1, i == 0, 0);
+            board.unmakeMove();
+
+            history[i][depth] = multiplier * score;
+            bestScore = Math.max(bestScore, score);
+            alpha = Math.max(alpha, score);
+            if (alpha >= beta) {
+                // Fail high: search this move first when the window is widened
+                int move = moves[i];
+                int[] scores = history[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                System.arraycopy(history, 0, history, 1, i);
+                moves[0] = move;
+                history[0] = scores;
+                break;
+            }
+
+            // Time Check: Exit mid-depth if we are overtime
+            if (stopped || Duration.between(start, Instant.now()).toMillis() > limitMs) {
+                timeUp = true;
+                break;
+            }
+        }
+        return bestScore;
+    }
+
+    /**
+     * How long findBestMove may run before it settles for the last completed
+     * depth.
+     *
+     * @param limitMs
+     */
+    public void setTimeLimit(long limitMs) {
+        this.limitMs = limitMs;
+    }
+
+    /**
+     * @return Nodes visited by the last findBestMove, quiescence and helper
+     *         threads included
+     */
+    public long getNodes() {
+        return nodes + helperNodes;
+    }
+
+    // Moves a history score towards +-maxHistory, more slowly the closer it is
+    private static void updateHistory(int[] sideHistory, int move, int bonus) {
+        int i = MovePicker.historyIndex(move);
+        sideHistory[i] += bonus - sideHistory[i] * Math.abs(bonus) / maxHistory;
+    }
+
+    /**
+     * Principal variation search of the position after a move, from the
+     * point of view of the side that made it. The first move of a node gets the
+     * full window; later ones are only checked with a null window to prove
+     * they are no better than alpha, and searched again properly if that
+     * fails. A reduced null-window search that beats alpha is repeated at
+     * full depth before that.
+     */
+    private int searchMove(Board board, int depth, int alpha, int beta, boolean isWhiteTurn, int ply,
+            boolean isFirst, int reduction) {
+        if (!isFirst) {
+            int score = -negamax(board, depth - reduction, -alpha - 1, -alpha, isWhiteTurn, ply, true);
+            if (score > alpha && reduction > 0) {
+                score = -negamax(board, depth, -alpha - 1, -alpha, isWhiteTurn, ply, true);
+            }
+            if (score <= alpha || score >= beta) {
+                return score;
+            }
+        }
+        return -negamax(board, depth, -beta, -alpha, isWhiteTurn, ply, true);
+    }
+
+    /**
+     * Alpha-beta search with scores from the side to move's point of view.
+     *
+     * @param allowNull False straight after a null move, or while verifying one
+     */
+    private int negamax(Board board, int depth, int alpha, int beta, boolean isWhiteTurn, int ply,
+            boolean allowNull) {
+        if (stopped) {
+            return 0;
+        }
+        nodes++;
         int originalAlpha = alpha;
         pieceColour turn = isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK;
 
-        // 1. TT Lookup (Normalizing mate scores with ply)
-        TranspositionTable.Entry ttEntry = tTable.get(board.zobristHash, ply);
-        if (ttEntry != null && ttEntry.depth >= depth) {
-            int score = ttEntry.score;
-            if (score > checkmate - 1000) {
-                score -= ply;
-            } else if (score < -checkmate + 1000) {
-                score += ply;
-            }
-            if (ttEntry.flag == TranspositionTable.exact)
+        // 1. TT Lookup (score() adjusts mate scores for ply)
+        long ttEntry = tTable.probe(board.zobristHash);
+        if (ttEntry != TranspositionTable.miss && TranspositionTable.depth(ttEntry) >= depth) {
+            int score = TranspositionTable.score(ttEntry, ply);
+            int ttFlag = TranspositionTable.flag(ttEntry);
+            if (ttFlag == TranspositionTable.exact)
                 return score;
-            if (ttEntry.flag == TranspositionTable.lowerBound)
+            if (ttFlag == TranspositionTable.lowerBound)
                 alpha = Math.max(alpha, score);
-            if (ttEntry.flag == TranspositionTable.upperBound)
+            if (ttFlag == TranspositionTable.upperBound)
                 beta = Math.min(beta, score);
             if (alpha >= beta)
                 return score;
         }
 
-        // ttEntry.bestMove
-
         // 2. Base Cases
         if (depth <= 0)
-            return quiescenceSearch(board, alpha, beta, isWhiteTurn);
+            return quiescenceSearch(board, alpha, beta, isWhiteTurn, ply);
+        if (ply >= maxPly - 1)
+            return evaluate(board, isWhiteTurn); // Out of move buffers
 
-        List<Move> moves = board.getLegalMoves(turn);
-        if (moves.isEmpty()) {
-            Coordinates kingPos = board.findKing(turn);
-            if (board.isSquareAttacked(kingPos, turn == pieceColour.WHITE ? pieceColour.WHITE : pieceColour.BLACK)) {
-                return isWhiteTurn ? -checkmate + ply : checkmate - ply;
-            }
-            return isWhiteTurn ? -300 : 300; // Draw contempt factor: Don't draw unless 3 pawns down or equivalent
+        // Threefold repetition or the fifty-move rule
+        if (board.repetitions() >= 3 || board.halfmoveClock() >= 100) {
+            return -10000; // Draw contempt factor
         }
-        // Threefold repetition
-        int count = 0;
-        for (int i = 0; i < board.history.size(); i++) {
-            if (board.zobristHash == board.history.get(i).getZob()) {
-                count++;
-            }
+
+        boolean inCheck = board.isInCheck(turn);
+        boolean pvNode = beta - alpha > 1;
+        boolean mateBounds = Math.abs(alpha) >= checkmate - 1000 || Math.abs(beta) >= checkmate - 1000;
+        // Static eval for the pruning decisions below; meaningless in check
+        int staticEval = (inCheck || pvNode) ? 0 : evaluate(board, isWhiteTurn);
+        boolean canPrune = !pvNode && !inCheck && !mateBounds;
+
+        // Reverse futility: so far above beta that no quiet reply at this
+        // shallow depth is expected to bring the score back down
+        if (useReverseFutility && canPrune && depth <= reverseFutilityDepth
+                && staticEval - reverseFutilityMargin * depth >= beta) {
+            return staticEval - reverseFutilityMargin * depth;
         }
-        if (count == 3) {
-            return isWhiteTurn ? -10000 : 10000; // Draw contempt factor
+
+        // Razoring: so far below alpha that only captures could help, so ask
+        // quiescence search whether they do
+        if (useRazoring && canPrune && depth < razorMargins.length && staticEval + razorMargins[depth] < alpha) {
+            int score = quiescenceSearch(board, alpha - 1, alpha, isWhiteTurn, ply);
+            if (score < alpha) {
+                return score;
+            }
         }
 
-        // 3. Move Ordering (Use TT move first)
-        if(ttEntry == null){
-            sortMoves(moves, board);
-        }else{
-            sortMoves(moves, board, ttEntry.bestMove);
+        // Null move: let the opponent move twice. If a reduced search still
+        // fails high, a real move would too. Unsafe in check, and in pawn
+        // endgames where having to move can be the whole problem.
+        if (useNullMove && allowNull && canPrune && depth >= nullMoveDepth && board.hasNonPawnMaterial(turn)
+                && staticEval >= beta) {
+            int reduction = (depth > 6) ? 3 : 2;
+            board.makeNullMove();
+            int score = -negamax(board, depth - 1 - reduction, -beta, -beta + 1, !isWhiteTurn, ply + 1, false);
+            board.unmakeNullMove();
+            if (score >= beta) {
+                if (score >= checkmate - 1000) {
+                    score = beta; // A mate found by passing is not a real mate
+                }
+                if (depth < nullVerifyDepth
+                        || negamax(board, depth - reduction, beta - 1, beta, isWhiteTurn, ply, false) >= beta) {
+                    return score;
+                }
+            }
         }
-        
-        int bestScore = isWhiteTurn ? -inf : inf;
-        Move bestMove = null;
 
-        for (Move m : moves) {
-            board.doMove(m); // Make a copy
+        // 3. Move Ordering (TT move, captures, killers, then quiets)
+        MovePicker picker = pickers[ply];
+        int[] sideHistory = history[turn.ordinal()];
+        int previousMove = board.getLastMoveCode();
+        int counterMove = (previousMove == MoveCode.none) ? MoveCode.none
+                : counterMoves[MovePicker.historyIndex(previousMove)];
+        picker.reset(board, turn, TranspositionTable.bestMove(ttEntry), killers[ply][0],
+                killers[ply][1], counterMove, sideHistory);
+
+        int bestScore = -inf;
+        int bestMove = MoveCode.none;
+        int movesSearched = 0;
+        int movesTried = 0; // Including those pruned, which still count as legal moves
+        int quietCount = 0;
+        pieceColour nextToMove = isWhiteTurn ? pieceColour.BLACK : pieceColour.WHITE;
+        // Futility: at the frontier, quiet moves can't lift a hopeless eval up to alpha
+        boolean futile = useFutilityPruning && canPrune && depth < futilityMargins.length
+                && staticEval + futilityMargins[depth] <= alpha;
+
+        for (int m = picker.next(); m != MoveCode.none; m = picker.next()) {
+            boolean badCapture = picker.isBadCapture();
+
+            // SEE pruning: near the leaves, don't bother with quiet moves that
+            // hang material or captures that lose it
+            if (useSeePruning && canPrune && depth <= seePruningDepth && movesSearched > 0
+                    && (badCapture || MovePicker.isQuiet(m)) && board.see(m) < -seePruningMargin * depth) {
+                movesTried++;
+                continue;
+            }
+
+            board.makeMove(m);
+            movesTried++;
 
             // CHECK EXTENSION: If you put the opponent in check, search deeper
-            int extension = 0;
-            pieceColour nextToMove = isWhiteTurn ? pieceColour.BLACK : pieceColour.WHITE;
-            if (board.isSquareAttacked(board.findKing(nextToMove), turn))
-                extension = 1;
+            boolean givesCheck = board.isInCheck(nextToMove);
+            int extension = givesCheck ? 1 : 0;
+            boolean quiet = MovePicker.isQuiet(m) && !givesCheck;
+
+            if (futile && quiet && movesSearched > 0) {
+                board.unmakeMove();
+                bestScore = Math.max(bestScore, staticEval + futilityMargins[depth]);
+                continue;
+            }
 
-            int score = minimax(board, depth - 1 + extension, alpha, beta, !isWhiteTurn, ply + 1);
-            board.undoMove();
+            // Late move reductions: quiet moves this far down the ordering
+            // rarely matter, so look at them less deeply first
+            int reduction = 0;
+            if (useLateMoveReductions && (quiet || (badCapture && !givesCheck)) && !inCheck
+                    && depth >= lmrDepth && movesSearched >= lmrMoveIndex
+                    && m != killers[ply][0] && m != killers[ply][1] && m != counterMove) {
+                reduction = lmrReductions[Math.min(depth, 63)][Math.min(movesSearched, 63)];
+                reduction = Math.max(0, Math.min(reduction - (pvNode ? 1 : 0), depth - 2));
+            }
 
-            if (isWhiteTurn) {
-                if (score > bestScore) {
-                    bestScore = score;
-                    bestMove = m;
-                }
-                alpha = Math.max(alpha, bestScore);
-            } else {
-                if (score < bestScore) {
-                    bestScore = score;
-                    bestMove = m;
-                }
-                beta = Math.min(beta, bestScore);
+            int score = searchMove(board, depth - 1 + extension, alpha, beta, !isWhiteTurn, ply + 1,
+                    movesSearched == 0, reduction);
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            movesSearched++;
+            if (MovePicker.isQuiet(m)) {
+                quietsSearched[ply][quietCount++] = m;
             }
 
-            if (alpha >= beta)
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = m;
+            }
+            alpha = Math.max(alpha, bestScore);
+
+            if (alpha >= beta) {
+                // Remember quiet moves that cut off for sibling nodes
+                if (MovePicker.isQuiet(m)) {
+                    if (m != killers[ply][0]) {
+                        killers[ply][1] = killers[ply][0];
+                        killers[ply][0] = m;
+                    }
+                    if (previousMove != MoveCode.none) {
+                        counterMoves[MovePicker.historyIndex(previousMove)] = m;
+                    }
+                    // Reward the cutoff move and penalise the quiets tried before it
+                    int bonus = Math.min(depth * depth, 400);
+                    for (int i = 0; i < quietCount - 1; i++) {
+                        updateHistory(sideHistory, quietsSearched[ply][i], -bonus);
+                    }
+                    updateHistory(sideHistory, m, bonus);
+                }
                 break;
+            }
+        }
+
+        if (movesTried == 0) {
+            if (inCheck) {
+                return -checkmate + ply;
+            }
+            return -300; // Draw contempt factor: Don't draw unless 3 pawns down or equivalent
         }
 
         // 4. TT Store (Normalizing mate scores with ply)
         int flag = (bestScore <= originalAlpha) ? TranspositionTable.upperBound
                 : (bestScore >= beta) ? TranspositionTable.lowerBound : TranspositionTable.exact;
 
+        if (stopped) {
+            return 0; // Cut short, so the score means nothing
+        }
         tTable.store(board.zobristHash, depth, bestScore, flag, bestMove, ply);
         return bestScore;
     }
 
-    private int quiescenceSearch(Board board, int alpha, int beta, boolean isWhiteTurn) {
-        int standPat = evaluator.evalAll(board, isWhiteTurn);
-        if (isWhiteTurn) {
-            if (standPat >= beta)
-                return beta;
-            alpha = Math.max(alpha, standPat);
-        } else {
-            if (standPat <= alpha)
-                return alpha;
-            beta = Math.min(beta, standPat);
+    private int quiescenceSearch(Board board, int alpha, int beta, boolean isWhiteTurn, int ply) {
+        nodes++;
+        // Results here are stored at depth 0, so an entry of any depth will do
+        if (useQuiescenceTT) {
+            long ttEntry = tTable.probe(board.zobristHash);
+            if (ttEntry != TranspositionTable.miss) {
+                int score = TranspositionTable.score(ttEntry, ply);
+                int ttFlag = TranspositionTable.flag(ttEntry);
+                if (ttFlag == TranspositionTable.exact
+                        || (ttFlag == TranspositionTable.lowerBound && score >= beta)
+                        || (ttFlag == TranspositionTable.upperBound && score <= alpha))
+                    return score;
+            }
         }
 
-        List<Move> captures = board.getLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK);
-        captures.removeIf(m -> m.getCapturedPiece() == null);
-        sortMoves(captures, board);
-
-        for (Move m : captures) {
-            board.doMove(m); // Make a copy
-            int score = quiescenceSearch(board, alpha, beta, !isWhiteTurn);
-            board.undoMove();
-
-            if (isWhiteTurn) {
-                if (score >= beta)
-                    return beta;
-                alpha = Math.max(alpha, score);
-            } else {
-                if (score <= alpha)
-                    return alpha;
-                beta = Math.min(beta, score);
+        int originalAlpha = alpha;
+        int standPat = evaluate(board, isWhiteTurn);
+        if (standPat >= beta)
+            return beta; // Not stored: cheaper to evaluate again than to keep
+        alpha = Math.max(alpha, standPat);
+        if (ply >= maxPly - 1)
+            return standPat; // Out of move buffers
+
+        MovePicker picker = pickers[ply];
+        picker.resetNoisy(board, isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK);
+        int bestMove = MoveCode.none;
+
+        for (int m = picker.next(); m != MoveCode.none; m = picker.next()) {
+            // Delta pruning: even winning the victim for free can't reach alpha
+            if (useDeltaPruning && !MoveCode.isPromotion(m)
+                    && standPat + Board.pieceValues[MoveCode.captured(m).ordinal()] + deltaMargin <= alpha)
+                continue;
+
+            board.makeMove(m);
+            int score = -quiescenceSearch(board, -beta, -alpha, !isWhiteTurn, ply + 1);
+            board.unmakeMove();
+
+            if (score >= beta) {
+                storeQuiescence(board, beta, TranspositionTable.lowerBound, m, ply);
+                return beta;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = m;
             }
         }
-        return isWhiteTurn ? alpha : beta;
+        int flag = (alpha > originalAlpha) ? TranspositionTable.exact : TranspositionTable.upperBound;
+        storeQuiescence(board, alpha, flag, bestMove, ply);
+        return alpha;
     }
 
-    private void sortRootMoves(List<Move> moves, Map<Move, int[]> history, int depth, boolean isWhite) {
-        if (depth == 0)
-            return;
-        moves.sort((a, b) -> Integer.compare(history.get(b)[depth], history.get(a)[depth]) * (isWhite ? 1 : -1));
-    }
-
-    public void sortMoves(List<Move> moves, Board board, Move ttEntryBestMove) {
-        moves.sort(
-                (a, b) -> Integer.compare(scoreMove(b, board, ttEntryBestMove), scoreMove(a, board, ttEntryBestMove)));
+    private void storeQuiescence(Board board, int score, int flag, int bestMove, int ply) {
+        if (useQuiescenceTT && !stopped) {
+            tTable.store(board.zobristHash, 0, score, flag, bestMove, ply);
+        }
     }
 
-    public void sortMoves(List<Move> moves, Board board) {
-        moves.sort(
-                (a, b) -> Integer.compare(scoreMove(b, board), scoreMove(a, board)));
+    // Eval scores are from White's point of view
+    private int evaluate(Board board, boolean isWhiteTurn) {
+        int score = evaluator.evalAll(board, isWhiteTurn);
+        return isWhiteTurn ? score : -score;
     }
 
-    //TODO: marker: I changed this to try to implement the TT move ordering 
-    private int scoreMove(Move move, Board board, Move ttEntryBestMove) {
-        
-        if (move.toString().equals(ttEntryBestMove.toString())) {
-            return Integer.MAX_VALUE;
-        } else {
-            int score = 0;
-            if (move.getCapturedPiece() != null) {
-                score = (materialValues.get(move.getCapturedPiece().getType()) * 10)
-                        - materialValues.get(move.piece.getType());
-                score += 10000;
-            }
-            if (move.isPromotion()) {
-                score += 8000;
+    /**
+     * Stable insertion sort of the root moves by their score at the given depth,
+     * carrying each move's row of scores along with it.
+     */
+    private void sortRootMoves(int[] moves, int[][] history, int count, int depth, boolean isWhite) {
+        if (depth == 0)
+            return;
+        int multiplier = isWhite ? 1 : -1;
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int[] scores = history[i];
+            int j = i - 1;
+            while (j >= 0 && multiplier * history[j][depth] < multiplier * scores[depth]) {
+                moves[j + 1] = moves[j];
+                history[j + 1] = history[j];
+                j--;
             }
-
-            return score;
-
+            moves[j + 1] = move;
+            history[j + 1] = scores;
         }
     }
 
-    private int scoreMove(Move move, Board board){
-        int score = 0;
-            if (move.getCapturedPiece() != null) {
-                score = (materialValues.get(move.getCapturedPiece().getType()) * 10)
-                        - materialValues.get(move.piece.getType());
-                score += 10000;
-            }
-            if (move.isPromotion()) {
-                score += 8000;
-            }
-
-            return score;
-    }
-
-    private Move chooseMove(Map<Move, int[]> history, List<Move> moves, int maxD, boolean isWhiteTurn) {
+    private int chooseMove(int[][] history, int[] moves, int count, int maxD, boolean isWhiteTurn) {
         int multiplier = isWhiteTurn ? 1 : -1;
-        Move bestMove = moves.get(0);
+        int bestMove = moves[0];
 
         // First find objectively best move
         int objectiveBestScore = isWhiteTurn ? -inf : inf;
-        for (Move m : moves) {
-            int score = history.get(m)[maxD];
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int score = history[i][maxD];
             if (score <= -inf - 7) {
                 continue; // Skip unsearched moves
             }
@@ -279,15 +659,16 @@ public class Search {
         return bestMove;
     }
 
-    private Move chooseTrickyMove(Map<Move, int[]> history, List<Move> moves, int maxD, boolean isWhiteTurn) {
+    private int chooseTrickyMove(int[][] history, int[] moves, int count, int maxD, boolean isWhiteTurn) {
         int multiplier = isWhiteTurn ? 1 : -1;
-        Move bestMove = moves.get(0);
+        int bestMove = moves[0];
         double relativeScore = -inf; // Make higher better regardless of side because side gave me a headache lol
 
         // First find objectively best move
         int objectiveBestScore = isWhiteTurn ? -inf : inf;
-        for (Move m : moves) {
-            int score = history.get(m)[maxD];
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int score = history[i][maxD];
             if (score <= -inf - 7) {
                 continue; // Skip unsearched moves
             }
@@ -299,14 +680,15 @@ public class Search {
         // Now we know the objectively best move
         // BUT WE DONT DO IT! Look for traps like a rat
 
-        for (Move m : moves) {
-            int finalScore = history.get(m)[maxD]; // This is the final score of the move
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            int finalScore = history[i][maxD]; // This is the final score of the move
             if (finalScore <= -inf - 7) {
                 continue; // Skip unsearched moves
             }
             // TODO: Experimental! Worst objective move must be within 1 pawn of best
             if (multiplier * finalScore >= (multiplier * objectiveBestScore - 50)) {
-                double shallowScore = history.get(m)[Math.min(maxD, 3)]; // Experimental depth of 3
+                double shallowScore = history[i][Math.min(maxD, 3)]; // Experimental depth of 3
                 if (shallowScore <= -inf - 7) {
                     shallowScore = finalScore;
                 }
@@ -321,7 +703,7 @@ public class Search {
 
                 if (finalScore < -500 && objectiveBestScore > -100) {
                     System.out.println("CRITICAL EVALUATION DROP DETECTED");
-                    System.out.println("Move: " + m);
+                    System.out.println("Move: " + MoveCode.toString(m));
                     System.out.println("Deep Score: " + finalScore);
                     System.out.println("Shallow Score: " + shallowScore);
                 }
@@ -338,19 +720,21 @@ public class Search {
 
         // Capture the hash before making any moves
         long originalHash = board.zobristHash;
-        List<Move> moves = board.getLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK);
+        int[] moves = new int[256];
+        int count = board.generateLegalMoves(isWhiteTurn ? pieceColour.WHITE : pieceColour.BLACK, moves, 0);
 
-        for (Move m : moves) {
-            board.doMove(m); // Make a copy
+        for (int i = 0; i < count; i++) {
+            int m = moves[i];
+            board.makeMove(m);
 
             verifyHash(board, depth - 1, !isWhiteTurn);
 
-            board.undoMove();
+            board.unmakeMove();
 
             // 3. The Ultimate Test
             if (board.zobristHash != originalHash) {
                 System.out.println("HASH CORRUPTION DETECTED!");
-                System.out.println("Move: " + m);
+                System.out.println("Move: " + MoveCode.toString(m));
                 System.out.println("Expected: " + Long.toHexString(originalHash));
                 System.out.println("Actual:   " + Long.toHexString(board.zobristHash));
                 System.out.println("Difference: " + Long.toHexString(originalHash ^ board.zobristHash));
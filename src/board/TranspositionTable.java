@@ -1,77 +1,143 @@
 package board;
 
+import java.util.Arrays;
+
+/**
+ * Hash table of search results, shared by every thread of a search without
+ * locks. Each slot is two longs: the packed entry, and the position's key
+ * XORed with it. A slot caught halfway through another thread's write then
+ * fails the key check and reads as a miss instead of mixing two positions.
+ * (Single long reads and writes are atomic on 64-bit JVMs.)
+ *
+ * Probes hand back the packed entry itself, read with the static accessors,
+ * so a hit allocates nothing. The arrays are only allocated by the first
+ * store (or allocate()), so a table that is never searched with costs
+ * nothing.
+ */
 public class TranspositionTable {
     public static final int exact = 0;
     public static final int upperBound = 1; // Beta cutoff
     public static final int lowerBound = 2; // Alpha cutoff
     public static final int checkmate = 900000;
 
-    public class Entry{
-        long key; 
-        int score; // Score reached by position
-        int depth; // Depth searched
-        int flag; // Exact, alpha, beta
-        Move bestMove;  // Best move found
-    }
+    // Packed entry: score in bits 0-21 (signed), flag in 22-23, depth in
+    // 24-30, a bit set in every stored entry at 31, and the best move
+    // (MoveCode) in 32-63
+    private static final long storedBit = 1L << 31;
+    private static final int bytesPerEntry = 16;
+
+    // What probe returns when the position isn't in the table
+    public static final long miss = 0;
 
-    private final Entry[] entries;
+    private long[] keys; // Key ^ data, null until allocated
+    private long[] data;
     private final int size;
 
-    public TranspositionTable(int size){
-        int entryCount = size * 1024 * 1024 / 56;
-        this.size = entryCount;
-        this.entries = new Entry[this.size];
+    /**
+     * @param size In megabytes
+     */
+    public TranspositionTable(int size) {
+        this.size = (int) Math.max(1, (long) size * 1024 * 1024 / bytesPerEntry);
+    }
+
+    /**
+     * Allocates the table if that hasn't happened yet. Must be called before
+     * any other thread uses the table, as allocation isn't synchronised.
+     */
+    public void allocate() {
+        if (keys == null) {
+            keys = new long[size];
+            data = new long[size];
+        }
     }
 
-    public Entry get(long zobristHash, int ply){
+    /**
+     * @param zobristHash
+     * @return The packed entry for the position, or miss
+     */
+    public long probe(long zobristHash) {
+        if (keys == null) {
+            return miss;
+        }
         int index = (int) ((zobristHash & 0x7FFFFFFFFFFFFFFFL) % size);
-        Entry e = entries[index];
-        if (e != null && e.key == zobristHash){
-            Entry rslt = new Entry();
-            rslt.score = e.score;
-            if (rslt.score > checkmate - 1000){
-                rslt.score -= ply;
-            }else if (rslt.score < -checkmate + 1000){
-                rslt.score += ply;
-            }
-            rslt.depth = e.depth;
-            rslt.flag = e.flag;
-            rslt.bestMove = e.bestMove;
-            return rslt;
+        long d = data[index];
+        return (d != 0 && (keys[index] ^ d) == zobristHash) ? d : miss;
+    }
+
+    /**
+     * @param entry
+     * @param ply   Distance from the root, to turn mate scores back into
+     *              mate-in-n from here
+     * @return Score reached by position
+     */
+    public static int score(long entry, int ply) {
+        int score = (int) (entry << 42 >> 42); // Sign-extends the 22-bit score
+        if (score > checkmate - 1000) {
+            score -= ply;
+        } else if (score < -checkmate + 1000) {
+            score += ply;
         }
-        return null;
+        return score;
+    }
+
+    /**
+     * @param entry
+     * @return Depth searched
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 24) & 0x7F;
+    }
+
+    /**
+     * @param entry
+     * @return exact, upperBound or lowerBound
+     */
+    public static int flag(long entry) {
+        return (int) (entry >>> 22) & 3;
+    }
+
+    /**
+     * @param entry
+     * @return Best move found (MoveCode), MoveCode.none if none
+     */
+    public static int bestMove(long entry) {
+        return (int) (entry >>> 32);
     }
 
-    public void store(long zobristHash, int depth, int score, int flag, Move bestMove, int ply) {
+    public void store(long zobristHash, int depth, int score, int flag, int bestMove, int ply) {
+        allocate();
         int index = (int) ((zobristHash & 0x7FFFFFFFFFFFFFFFL) % size);
         // Replacement Scheme: Always replace if the new search is deeper
         // or if the existing entry is from a different position (collision)
-        Entry e = entries[index];
-        if (e == null) {
-            e = new Entry();
-            entries[index] = e;
-        }
+        long old = data[index];
+        long oldKey = keys[index] ^ old;
+        boolean empty = old == 0;
         // Mate score normalisation
-        if (score > checkmate - 1000){
+        if (score > checkmate - 1000) {
             score += ply;
-        }else if (score < -checkmate + 1000){
+        } else if (score < -checkmate + 1000) {
             score -= ply;
         }
 
-        // Don't overwrite a deep search with a shallow one unless it's a different position
-        if (e.key == 0 || e.key != zobristHash || depth >= e.depth) {
-            e.key = zobristHash;
-            e.score = score;
-            e.depth = depth;
-            e.flag = flag;
-            e.bestMove = bestMove;
+        // Don't overwrite a deep search with a shallow one unless it's a different position.
+        // Quiescence results (depth 0) are too plentiful to push out real searches either way.
+        int oldDepth = depth(old);
+        boolean replace = (oldKey != zobristHash) ? (depth > 0 || oldDepth <= 0) : depth >= oldDepth;
+        if (empty || replace) {
+            long d = (score & 0x3FFFFFL)
+                    | ((long) flag << 22)
+                    | ((long) Math.min(Math.max(depth, 0), 127) << 24)
+                    | storedBit
+                    | ((long) bestMove << 32);
+            data[index] = d;
+            keys[index] = zobristHash ^ d;
         }
     }
 
-
-    public void clear(){
-        for(int i = 0; i < entries.length; i++){
-            entries[i] = null;
+    public void clear() {
+        if (keys != null) {
+            Arrays.fill(keys, 0);
+            Arrays.fill(data, 0);
         }
     }
 
@@ -79,19 +145,15 @@ public class TranspositionTable {
      * Returns how filled the transposition table is (percentage).
      * @return
      */
-    public double filled(){
+    public double filled() {
         int count = 0;
-        for (int i = 0; i < entries.length; i++){
-            if (entries[i] != null){
-                count ++;
+        for (int i = 0; keys != null && i < size; i++) {
+            if (data[i] != 0) {
+                count++;
             }
         }
 
-        return (double) count / entries.length * 100;
+        return (double) count / size * 100;
     }
 
-   
-    
-
-
 }
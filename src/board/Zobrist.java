@@ -1,6 +1,6 @@
 package board;
 
-import java.security.SecureRandom;
+import java.util.Random;
 
 public class Zobrist {
     public static final long[][][] pieces = new long[2][6][64];
@@ -9,7 +9,8 @@ public class Zobrist {
     public static final long turn;
 
     static{
-        SecureRandom random = new SecureRandom();
+        // Fixed seed, so hash collisions and therefore node counts are the same on every run
+        Random random = new Random(0x5EEDC0DEL);
         for(int c = 0; c < 2; c++){
             for(int t = 0; t < 6; t++){
                 for(int s = 0; s < 64; s++){
@@ -0,0 +1,5 @@
+package enums;
+
+public enum gameState {
+    PLAYING, CHECKMATE, STALEMATE, THREEFOLD, FIFTY_MOVE, INSUFFICIENT_MATERIAL
+}
@@ -1,6 +1,7 @@
 package pieces;
 
 import board.Coordinates;
+import board.Attacks;
 import board.Board;
 import enums.pieceColour;
 import enums.pieceType;
@@ -14,17 +15,7 @@ public class King extends Piece{
 
     @Override
     public boolean isValidMove(Coordinates target, Board board){
-        // Reject moves to the same square
-        if (coordinates.getRow() == target.getRow() && coordinates.getCol() == target.getCol()) {
-            return false;
-        }
-
-        // Use array-based indices for movement deltas 
-        int dRow = target.getRow() - coordinates.getRow();
-        int dCol = target.getCol() - coordinates.getCol();
-
-        // King can only move one square in any direction
-        if(Math.abs(dRow) > 1 || Math.abs(dCol) > 1){
+        if ((getAttacks(board) & (1L << target.getIndex())) == 0) {
             return false;
         }
 
@@ -33,9 +24,12 @@ public class King extends Piece{
             return true;
         }else{
             return false;
-        }        
-
+        }
+    }
 
+    @Override
+    public long getAttacks(Board board){
+        return Attacks.kingAttacks[coordinates.getIndex()];
     }
 
     @Override
@@ -1,5 +1,6 @@
 package pieces;
 
+import board.Attacks;
 import board.Board;
 import board.Coordinates;
 import enums.pieceColour;
@@ -14,18 +15,7 @@ public class Knight extends Piece{
 
     @Override
     public boolean isValidMove(Coordinates target, Board board){
-        // Reject moves to the same square
-        if (coordinates.getRow() == target.getRow() && coordinates.getCol() == target.getCol()) {
-            return false;
-        }
-
-        int dRow = target.getRow() - coordinates.getRow();
-        int dCol = target.getCol() - coordinates.getCol();
-        int absRow = Math.abs(dRow);
-        int absCol = Math.abs(dCol);
-
-        // dRow = 2 AND dCol = 1 OR dRow = 1 AND dCol = 2 to be a valid knight move
-        if(!(absRow == 2 && absCol == 1) && !(absRow == 1 && absCol == 2)){
+        if ((getAttacks(board) & (1L << target.getIndex())) == 0) {
             return false;
         }
 
@@ -37,6 +27,11 @@ public class Knight extends Piece{
         }
     }
 
+    @Override
+    public long getAttacks(Board board){
+        return Attacks.knightAttacks[coordinates.getIndex()];
+    }
+
     @Override
     public String getSymbol(){
         return "N";
@@ -1,7 +1,9 @@
 package pieces;
 
+import board.Attacks;
 import board.Board;
 import board.Coordinates;
+import board.MoveCode;
 import enums.pieceColour;
 import enums.pieceType;
 
@@ -9,6 +11,10 @@ import enums.pieceType;
 
 public class Pawn extends Piece {
 
+    // Queen first so move ordering ties favour it
+    private static final pieceType[] promotionTypes = { pieceType.QUEEN, pieceType.KNIGHT, pieceType.ROOK,
+            pieceType.BISHOP };
+
     private boolean canMoveTwo = true;
     private boolean justMovedTwo = false;
 
@@ -47,9 +53,10 @@ public class Pawn extends Piece {
             }
         }
 
-        // Two-square initial move
-        if (dUpDown == 2 * moveDir && board.getPiece(target) == null && dLeftRight == 0 && !this.hasMoved()) {
-            Coordinates between = new Coordinates(coordinates.getRank() + moveDir, coordinates.getFile());
+        // Two-square initial move (a pawn still on its starting rank has never moved)
+        if (dUpDown == 2 * moveDir && board.getPiece(target) == null && dLeftRight == 0
+                && coordinates.getRank() == startRank()) {
+            Coordinates between = Coordinates.of(coordinates.getIndex() + 8 * moveDir);
             if (board.getPiece(between) == null) {
                 return true;
             }
@@ -63,21 +70,73 @@ public class Pawn extends Piece {
 
     }
 
+    /**
+     * Enumerates pushes, double pushes and captures directly instead of asking
+     * isValidMove about every target. A move onto the last rank is emitted once
+     * per promotion piece. En passant is left to the board, which owns the
+     * double push history.
+     */
+    @Override
+    public int generateMoves(Board board, long targets, int[] moves, int count) {
+        int from = coordinates.getIndex();
+        int forward = (colour == pieceColour.WHITE) ? 8 : -8;
+        long empty = ~board.getOccupancy();
+
+        // Pawns never stand on the last rank, so the push square is on the board
+        int one = from + forward;
+        if ((empty & (1L << one)) != 0) {
+            if ((targets & (1L << one)) != 0) {
+                count = addPawnMove(from, one, null, moves, count);
+            }
+            int two = one + forward;
+            if (coordinates.getRank() == startRank() && (empty & targets & (1L << two)) != 0) {
+                moves[count++] = MoveCode.encode(from, two, pieceType.PAWN, null, null, MoveCode.flagDoublePush);
+            }
+        }
+
+        pieceColour enemy = (colour == pieceColour.WHITE) ? pieceColour.BLACK : pieceColour.WHITE;
+        long captures = getAttacks(board) & board.getColourBitboard(enemy) & targets;
+        while (captures != 0) {
+            int to = Long.numberOfTrailingZeros(captures);
+            captures &= captures - 1;
+            count = addPawnMove(from, to, board.getPiece(to).getType(), moves, count);
+        }
+        return count;
+    }
+
+    private int addPawnMove(int from, int to, pieceType captured, int[] moves, int count) {
+        int lastRank = (colour == pieceColour.WHITE) ? 8 : 1;
+        if (to / 8 + 1 != lastRank) {
+            moves[count++] = MoveCode.encode(from, to, pieceType.PAWN, captured, null, 0);
+            return count;
+        }
+        for (pieceType promotion : promotionTypes) {
+            moves[count++] = MoveCode.encode(from, to, pieceType.PAWN, captured, promotion, 0);
+        }
+        return count;
+    }
+
+    private int startRank() {
+        return (colour == pieceColour.WHITE) ? 2 : 7;
+    }
+
     // Special case: Pawns attack differently and must be treated differently
     public boolean canAttack(Coordinates target, Board board) {
-        int moveDir = (colour == pieceColour.WHITE) ? 1 : -1;
-        int dUpDown = target.getRank() - coordinates.getRank();
-        int dLeftRight = target.getFile() - coordinates.getFile();
+        if ((getAttacks(board) & (1L << target.getIndex())) == 0) {
+            return false;
+        }
 
-        if (dUpDown == moveDir && board.getPiece(target) != null && Math.abs(dLeftRight) == 1) {
-            Piece toBeCaptured = board.getPiece(target);
-            if (toBeCaptured.getColour() != colour) {
-                return true;
-            } else {
-                return false;
-            }
+        Piece toBeCaptured = board.getPiece(target);
+        if (toBeCaptured != null && toBeCaptured.getColour() != colour) {
+            return true;
+        } else {
+            return false;
         }
-        return false;
+    }
+
+    @Override
+    public long getAttacks(Board board) {
+        return Attacks.pawnAttacks[colour.ordinal()][coordinates.getIndex()];
     }
 
     public boolean canPassant(Coordinates target, Board board) {
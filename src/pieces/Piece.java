@@ -3,6 +3,7 @@ package pieces;
 import enums.pieceColour;
 import enums.pieceType;
 import board.Coordinates;
+import board.MoveCode;
 
 import java.util.Objects;
 
@@ -15,6 +16,7 @@ public abstract class Piece {
     pieceType type;
     Coordinates coordinates;
     boolean hasMoved;
+    int listIndex = -1; // Slot in the board's piece list, so it can be removed in O(1)
 
     public Piece(pieceType type, pieceColour colour, Coordinates coordinates) {
         this.colour = colour;
@@ -54,6 +56,14 @@ public abstract class Piece {
         hasMoved = x;
     }
 
+    public int getListIndex() {
+        return listIndex;
+    }
+
+    public void setListIndex(int index) {
+        listIndex = index;
+    }
+
     // @Override
     // public boolean equals(Object o){
     //     if (o == null){
@@ -82,6 +92,40 @@ public abstract class Piece {
 
     public abstract boolean isValidMove(Coordinates target, Board board);
 
+    /**
+     * Bitboard of every square this piece attacks from where it stands,
+     * including squares held by its own side. Pawns only return captures.
+     * 
+     * @param board
+     * @return
+     */
+    public abstract long getAttacks(Board board);
+
     public abstract String getSymbol();
 
+    /**
+     * Writes this piece's moves that land on a square in targets into moves,
+     * starting at count, walking only the squares it can actually reach.
+     * Targets already excludes squares the board has ruled out (own pieces,
+     * kings, or anything outside a pin or check mask); legality beyond that is
+     * the board's job.
+     * 
+     * @param board
+     * @param targets
+     * @param moves   Packed moves (see MoveCode)
+     * @param count   Number of moves already in the buffer
+     * @return The new number of moves in the buffer
+     */
+    public int generateMoves(Board board, long targets, int[] moves, int count) {
+        int from = coordinates.getIndex();
+        long reachable = getAttacks(board) & targets;
+        while (reachable != 0) {
+            int to = Long.numberOfTrailingZeros(reachable);
+            reachable &= reachable - 1;
+            Piece victim = board.getPiece(to);
+            moves[count++] = MoveCode.encode(from, to, type, (victim == null) ? null : victim.getType(), null, 0);
+        }
+        return count;
+    }
+
 }